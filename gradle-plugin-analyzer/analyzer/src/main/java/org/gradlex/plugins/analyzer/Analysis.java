@@ -1,11 +1,40 @@
 package org.gradlex.plugins.analyzer;
 
 import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.VisitDecision;
+
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public interface Analysis {
+    /**
+     * Types may be analyzed concurrently, see {@link DefaultAnalyzer}.
+     * Look up inherited members via {@link WalaUtil#findMethod} and {@link WalaUtil#findField} then,
+     * as WALA's {@code IClass.getMethod()} and {@code IClass.getField()} are not thread-safe.
+     */
     void analyzeType(IClass type, AnalysisContext context);
 
     interface AnalysisContext extends Reporter {
         TypeResolver getResolver();
+
+        /**
+         * Walks the references of the analyzed type.
+         * <p>
+         * When multiple analyses are executed together, the work that does not depend on the hierarchy filter
+         * is shared between them.
+         */
+        default void walkReferences(IClass type, Function<IClass, VisitDecision> hierarchyFilter, Consumer<Reference> handler) {
+            TypeReferenceWalker.walkReferences(type, getResolver(), hierarchyFilter, handler);
+        }
+
+        /**
+         * Finds the Gradle API method the given method overrides in the closest Gradle API superclass.
+         */
+        @Nullable
+        default IMethod findOverriddenGradleApiMethod(IMethod method) {
+            return WalaUtil.findOverriddenMethod(method, TypeOrigin::isGradleApi);
+        }
     }
 }
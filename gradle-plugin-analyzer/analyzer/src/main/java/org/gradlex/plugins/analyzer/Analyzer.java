@@ -2,6 +2,27 @@ package org.gradlex.plugins.analyzer;
 
 import org.gradlex.plugins.analyzer.TypeRepository.TypeSet;
 
+import java.util.List;
+
 public interface Analyzer {
     void analyze(TypeSet typeSet, Analysis analysis, Reporter reporter);
+
+    /**
+     * Executes multiple analyses in a single pass, visiting each type only once.
+     * By default, the analyses are executed one after the other.
+     */
+    default void analyze(List<Binding> bindings) {
+        for (Binding binding : bindings) {
+            analyze(binding.typeSet(), binding.analysis(), binding.reporter());
+        }
+    }
+
+    /**
+     * @param referenceEngine how the analysis walks the declared references of types.
+     */
+    record Binding(TypeSet typeSet, Analysis analysis, ReferenceEngine referenceEngine, Reporter reporter) {
+        public Binding(TypeSet typeSet, Analysis analysis, Reporter reporter) {
+            this(typeSet, analysis, ReferenceEngine.BYTECODE, reporter);
+        }
+    }
 }
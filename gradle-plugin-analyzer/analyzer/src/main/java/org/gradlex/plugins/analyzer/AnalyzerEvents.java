@@ -0,0 +1,90 @@
+package org.gradlex.plugins.analyzer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the phases of analyzing a plugin.
+ * <p>
+ * The events cost next to nothing while no recording is running, so they are always emitted.
+ * Per-type events only fill in their fields when they are going to be committed.
+ */
+public final class AnalyzerEvents {
+    private static final String CATEGORY = "Gradle Plugin Analyzer";
+    private static final String PREFIX = "org.gradlex.plugins.analyzer.";
+
+    private AnalyzerEvents() {
+    }
+
+    @Name(PREFIX + "TypeRepositoryCreation")
+    @Label("Type Repository Creation")
+    @Description("Loading the runtime and the classpath of a plugin, including the class hierarchy")
+    @Category(CATEGORY)
+    public static class TypeRepositoryCreation extends Event {
+        @Label("Classpath Entries")
+        public int classpathEntries;
+
+        @Label("Classes")
+        public int classes;
+
+        @Label("Lazy Hierarchy")
+        public boolean lazyHierarchy;
+    }
+
+    @Name(PREFIX + "ClassHierarchyBuild")
+    @Label("Class Hierarchy Build")
+    @Description("Building the WALA class hierarchy of the runtime and the classpath")
+    @Category(CATEGORY)
+    public static class ClassHierarchyBuild extends Event {
+        @Label("Classes")
+        public int classes;
+    }
+
+    @Name(PREFIX + "TypeSetLoad")
+    @Label("Type Set Load")
+    @Description("Computing the types of a type set, including the reference closure")
+    @Category(CATEGORY)
+    public static class TypeSetLoad extends Event {
+        @Label("Type Set")
+        public String typeSet;
+
+        @Label("Types")
+        public int types;
+    }
+
+    @Name(PREFIX + "AnalyzeType")
+    @Label("Analyze Type")
+    @Description("A single call of an analysis for a type")
+    @Category(CATEGORY)
+    public static class AnalyzeType extends Event {
+        @Label("Analysis")
+        public String analysis;
+
+        @Label("Type")
+        public String type;
+
+        @Label("References")
+        @Description("The references walked by the analysis for the type")
+        public int references;
+    }
+
+    @Name(PREFIX + "ReportWriting")
+    @Label("Report Writing")
+    @Description("Writing the report of a plugin")
+    @Category(CATEGORY)
+    public static class ReportWriting extends Event {
+        @Label("Report")
+        public String report;
+
+        @Label("Messages")
+        public int messages;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+}
@@ -0,0 +1,83 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Enumerates the class files of a classpath entry without going through WALA.
+ */
+public class ClassFiles {
+    private static final String CLASS_SUFFIX = ".class";
+
+    public interface ClassFileVisitor {
+        /**
+         * @param typeName the WALA type name of the class, e.g. {@code Lorg/gradle/api/Task}.
+         * @param content the bytes of the class file, only valid during the call.
+         */
+        void visit(String typeName, ByteSource content) throws IOException;
+    }
+
+    public static void visit(Path path, ClassFileVisitor visitor) throws IOException {
+        if (Files.isRegularFile(path)) {
+            visitJar(path, visitor);
+        } else if (Files.isDirectory(path)) {
+            visitDirectory(path, visitor);
+        }
+    }
+
+    private static void visitJar(Path path, ClassFileVisitor visitor) throws IOException {
+        try (JarFile jar = new JarFile(path.toFile(), false)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String typeName = toTypeName(entry.getName());
+                if (typeName != null) {
+                    visitor.visit(typeName, new ByteSource() {
+                        @Override
+                        public InputStream openStream() throws IOException {
+                            return jar.getInputStream(entry);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private static void visitDirectory(Path root, ClassFileVisitor visitor) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk
+                .filter(Files::isRegularFile)
+                .sorted(Comparator.comparing(Path::toString))
+                .toList();
+        }
+        for (Path file : files) {
+            String typeName = toTypeName(root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"));
+            if (typeName != null) {
+                visitor.visit(typeName, MoreFiles.asByteSource(file));
+            }
+        }
+    }
+
+    @Nullable
+    private static String toTypeName(String entryName) {
+        if (!entryName.endsWith(CLASS_SUFFIX)
+            || entryName.startsWith("META-INF/")
+            || entryName.endsWith("module-info.class")) {
+            return null;
+        }
+        return "L" + entryName.substring(0, entryName.length() - CLASS_SUFFIX.length());
+    }
+}
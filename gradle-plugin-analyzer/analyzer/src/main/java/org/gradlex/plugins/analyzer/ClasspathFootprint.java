@@ -0,0 +1,98 @@
+package org.gradlex.plugins.analyzer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The number of classes on a classpath and the size of their bytecode, used to estimate the heap needed to analyze them.
+ * <p>
+ * Only the central directories of jars are read, so this is cheap to compute before starting a worker.
+ */
+public record ClasspathFootprint(int classes, long bytecodeBytes) {
+    public static final ClasspathFootprint EMPTY = new ClasspathFootprint(0, 0);
+    /**
+     * The smallest heap {@link #estimateHeapMegabytes} returns, unless the maximum is smaller.
+     */
+    public static final long SMALLEST_HEAP_MEGABYTES = 512;
+
+    // Rough costs of the class hierarchy, type table and caches, to be tuned with the peak heap of plugin reports
+    private static final long BASE_MEGABYTES = 256;
+    private static final long BYTES_PER_CLASS = 12 * 1024;
+    private static final long BYTES_PER_BYTECODE_BYTE = 2;
+    // Only the reachable part of a lazily loaded runtime ends up in the hierarchy
+    private static final int LAZY_RUNTIME_DIVISOR = 2;
+    private static final long[] HEAP_SIZES_MEGABYTES = {SMALLEST_HEAP_MEGABYTES, 768, 1024, 1536, 2048, 3072, 4096, 6144, 8192};
+
+    public static ClasspathFootprint of(Collection<Path> paths) throws IOException {
+        ClasspathFootprint result = EMPTY;
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                result = result.plus(ofDirectory(path));
+            } else if (Files.isRegularFile(path)) {
+                result = result.plus(ofJar(path));
+            }
+        }
+        return result;
+    }
+
+    private static ClasspathFootprint ofJar(Path path) throws IOException {
+        int classes = 0;
+        long bytes = 0;
+        try (ZipFile jar = new ZipFile(path.toFile())) {
+            var entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class")) {
+                    classes++;
+                    bytes += Math.max(0, entry.getSize());
+                }
+            }
+        }
+        return new ClasspathFootprint(classes, bytes);
+    }
+
+    private static ClasspathFootprint ofDirectory(Path directory) throws IOException {
+        int classes = 0;
+        long bytes = 0;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.toString().endsWith(".class") && Files.isRegularFile(file)) {
+                    classes++;
+                    bytes += Files.size(file);
+                }
+            }
+        }
+        return new ClasspathFootprint(classes, bytes);
+    }
+
+    public ClasspathFootprint plus(ClasspathFootprint other) {
+        return new ClasspathFootprint(classes + other.classes, bytecodeBytes + other.bytecodeBytes);
+    }
+
+    /**
+     * The heap a worker needs to analyze the classpath on top of the runtime,
+     * rounded up to one of a few sizes so that workers of similar plugins can be reused, and capped at the maximum.
+     */
+    public static long estimateHeapMegabytes(ClasspathFootprint runtime, ClasspathFootprint classpath, boolean lazyHierarchy, long maximumMegabytes) {
+        long runtimeBytes = runtime.estimateBytes();
+        if (lazyHierarchy) {
+            runtimeBytes /= LAZY_RUNTIME_DIVISOR;
+        }
+        long megabytes = BASE_MEGABYTES + (runtimeBytes + classpath.estimateBytes()) / (1024 * 1024);
+        for (long size : HEAP_SIZES_MEGABYTES) {
+            if (size >= megabytes) {
+                return Math.min(size, maximumMegabytes);
+            }
+        }
+        return maximumMegabytes;
+    }
+
+    private long estimateBytes() {
+        return classes * BYTES_PER_CLASS + bytecodeBytes * BYTES_PER_BYTECODE_BYTE;
+    }
+}
@@ -0,0 +1,155 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * The constant pool and the class header of a class file, read without decoding fields, methods and their bytecode.
+ * <p>
+ * Class names are in the internal form of the class file, e.g. {@code org/gradle/api/Task} or {@code [Lorg/gradle/api/Task;}.
+ */
+final class ConstantPool {
+    static final int CONSTANT_UTF8 = 1;
+    static final int CONSTANT_CLASS = 7;
+    static final int CONSTANT_STRING = 8;
+    static final int CONSTANT_FIELDREF = 9;
+    static final int CONSTANT_METHODREF = 10;
+    static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private final byte[] tags;
+    // The first index operand of each entry, e.g. the name of a class
+    private final int[] operands;
+    // The second index operand of each entry, e.g. the name and type of a member reference
+    private final int[] secondOperands;
+    private final String[] utf8s;
+    private final String className;
+    @Nullable
+    private final String superName;
+    private final ImmutableList<String> interfaceNames;
+    private final int membersOffset;
+
+    private ConstantPool(byte[] classFile) throws IOException {
+        var bytes = new ByteArrayInputStream(classFile);
+        var input = new DataInputStream(bytes);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+        int count = input.readUnsignedShort();
+        this.tags = new byte[count];
+        this.operands = new int[count];
+        this.secondOperands = new int[count];
+        this.utf8s = new String[count];
+        for (int index = 1; index < count; index++) {
+            int tag = input.readUnsignedByte();
+            tags[index] = (byte) tag;
+            switch (tag) {
+                case CONSTANT_UTF8 -> utf8s[index] = input.readUTF();
+                // Integer and float
+                case 3, 4 -> input.skipNBytes(4);
+                // Long and double take up two entries
+                case 5, 6 -> {
+                    input.skipNBytes(8);
+                    index++;
+                }
+                // Class, string, method type, module and package
+                case CONSTANT_CLASS, 8, 16, 19, 20 -> operands[index] = input.readUnsignedShort();
+                // Field, method and interface method references, name and type, dynamic and invoke dynamic
+                case 9, 10, 11, 12, 17, 18 -> {
+                    operands[index] = input.readUnsignedShort();
+                    secondOperands[index] = input.readUnsignedShort();
+                }
+                // Method handle
+                case 15 -> {
+                    input.skipNBytes(1);
+                    operands[index] = input.readUnsignedShort();
+                }
+                default -> throw new IOException("Unsupported constant pool tag " + tag + " at index " + index);
+            }
+        }
+        input.readUnsignedShort();
+        this.className = getClassName(input.readUnsignedShort());
+        int superIndex = input.readUnsignedShort();
+        this.superName = superIndex == 0
+            ? null
+            : getClassName(superIndex);
+        int interfaceCount = input.readUnsignedShort();
+        var interfaces = ImmutableList.<String>builderWithExpectedSize(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(getClassName(input.readUnsignedShort()));
+        }
+        this.interfaceNames = interfaces.build();
+        this.membersOffset = classFile.length - bytes.available();
+    }
+
+    static ConstantPool read(byte[] classFile) throws IOException {
+        return new ConstantPool(classFile);
+    }
+
+    /**
+     * The number of entries, including the unused entry 0 and the second entries of longs and doubles.
+     */
+    int size() {
+        return tags.length;
+    }
+
+    int getTag(int index) {
+        return tags[index];
+    }
+
+    String getUtf8(int index) {
+        return utf8s[index];
+    }
+
+    String getClassName(int index) {
+        return utf8s[operands[index]];
+    }
+
+    /**
+     * The name of the class declaring the field or method referenced by the entry.
+     */
+    String getMemberClassName(int index) {
+        return getClassName(operands[index]);
+    }
+
+    /**
+     * The name of the field or method referenced by the entry.
+     */
+    String getMemberName(int index) {
+        return utf8s[operands[secondOperands[index]]];
+    }
+
+    /**
+     * The descriptor of the field or method referenced by the entry, e.g. {@code (Ljava/lang/String;)V}.
+     */
+    String getMemberDescriptor(int index) {
+        return utf8s[secondOperands[secondOperands[index]]];
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    @Nullable
+    String getSuperName() {
+        return superName;
+    }
+
+    ImmutableList<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * The offset of the fields in the class file, right after the class header.
+     */
+    int getMembersOffset() {
+        return membersOffset;
+    }
+}
@@ -0,0 +1,315 @@
+package org.gradlex.plugins.analyzer;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.core.util.strings.Atom;
+import com.ibm.wala.types.Selector;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitor;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitorFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Walks the declared references of a type like {@link TypeReferenceWalker#walkDeclaredReferences(IClass, ReferenceVisitorFactory)},
+ * but reads them straight from the class file, see {@link ReferenceEngine#CONSTANT_POOL}.
+ * <p>
+ * Annotations and declared exceptions are read from their attributes, the types of fields and methods
+ * from the descriptors WALA already parsed when loading the class.
+ * Method bodies are only skimmed for the instructions that use constant pool entries,
+ * so that references can still be attributed to the method using them.
+ */
+final class ConstantPoolReferenceWalker {
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int IINC = 0x84;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int CHECKCAST = 0xc0;
+    private static final int INSTANCEOF = 0xc1;
+    private static final int WIDE = 0xc4;
+    private static final int MULTIANEWARRAY = 0xc5;
+
+    // The length of each instruction with a fixed length, including the opcode
+    private static final byte[] INSTRUCTION_LENGTHS = new byte[256];
+
+    static {
+        Arrays.fill(INSTRUCTION_LENGTHS, (byte) 1);
+        setLength(2, 0x10, LDC, 0xbc, 0xa9);
+        setLength(2, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a);
+        setLength(3, 0x11, LDC_W, LDC2_W, IINC, NEW, ANEWARRAY, CHECKCAST, INSTANCEOF, 0xc6, 0xc7);
+        setLength(3, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC);
+        for (int opcode = 0x99; opcode <= 0xa8; opcode++) {
+            // Conditional branches, goto and jsr
+            setLength(3, opcode);
+        }
+        setLength(4, MULTIANEWARRAY);
+        setLength(5, INVOKEINTERFACE, 0xba, 0xc8, 0xc9);
+    }
+
+    private final IClass type;
+    private final ReferenceVisitorFactory visitorFactory;
+    private final ConstantPool pool;
+    private final ByteBuffer classFile;
+
+    private ConstantPoolReferenceWalker(IClass type, ReferenceVisitorFactory visitorFactory, byte[] classFile) throws IOException {
+        this.type = type;
+        this.visitorFactory = visitorFactory;
+        this.pool = ConstantPool.read(classFile);
+        this.classFile = ByteBuffer.wrap(classFile);
+    }
+
+    /**
+     * Walks the declared references of the type with visitors created by the given factory.
+     * Types not loaded from a class file are walked by {@link TypeReferenceWalker} instead.
+     */
+    static void walkDeclaredReferences(IClass type, ReferenceVisitorFactory visitorFactory) {
+        if (!(type instanceof ShrikeClass shrikeClass)) {
+            TypeReferenceWalker.walkDeclaredReferences(type, visitorFactory);
+            return;
+        }
+        try {
+            new ConstantPoolReferenceWalker(type, visitorFactory, shrikeClass.getReader().getBytes()).walk();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read class " + type.getName(), e);
+        }
+    }
+
+    private record Member(String name, String descriptor, List<String> annotationTypes, List<String> exceptionTypes, int codeOffset, int codeLength) {
+    }
+
+    private void walk() {
+        classFile.position(pool.getMembersOffset());
+        List<Member> fields = readMembers();
+        List<Member> methods = readMembers();
+        // Class attributes come last in the class file, but annotations are visited first like the bytecode walker does
+        Member declaration = readAttributes("", "");
+
+        ReferenceVisitor annotationVisitor = visitorFactory.forTypeAnnotations(type);
+        declaration.annotationTypes().forEach(annotationVisitor::visitType);
+
+        for (Member member : fields) {
+            IField field = WalaUtil.findDeclaredField(type, Atom.findOrCreateUnicodeAtom(member.name()));
+            if (field != null) {
+                ReferenceVisitor fieldAnnotationVisitor = visitorFactory.forFieldAnnotations(field);
+                member.annotationTypes().forEach(fieldAnnotationVisitor::visitType);
+                // WALA parses the descriptor when loading the class, and keeps array types unlike the resolver
+                visitorFactory.forFieldDeclaration(field).visitType(field.getFieldTypeReference());
+            }
+        }
+
+        for (Member member : methods) {
+            IMethod method = WalaUtil.findDeclaredMethod(type, Selector.make(member.name() + member.descriptor()));
+            if (method != null) {
+                visitMethod(method, member);
+            }
+        }
+    }
+
+    private void visitMethod(IMethod method, Member member) {
+        ReferenceVisitor methodAnnotationVisitor = visitorFactory.forMethodAnnotations(method);
+        member.annotationTypes().forEach(methodAnnotationVisitor::visitType);
+
+        ReferenceVisitor declarationVisitor = visitorFactory.forMethodDeclaration(method);
+        declarationVisitor.visitType(method.getReturnType());
+        for (int iParam = 0; iParam < method.getNumberOfParameters(); iParam++) {
+            declarationVisitor.visitType(method.getParameterType(iParam));
+        }
+        member.exceptionTypes().forEach(declarationVisitor::visitType);
+
+        if (member.codeLength() > 0) {
+            visitCode(member.codeOffset(), member.codeLength(), visitorFactory.forMethodBody(method));
+        }
+    }
+
+    private List<Member> readMembers() {
+        int count = u2();
+        var members = new ArrayList<Member>(count);
+        for (int i = 0; i < count; i++) {
+            // Skip the access flags
+            u2();
+            String name = pool.getUtf8(u2());
+            String descriptor = pool.getUtf8(u2());
+            members.add(readAttributes(name, descriptor));
+        }
+        return members;
+    }
+
+    private Member readAttributes(String name, String descriptor) {
+        var annotationTypes = new ArrayList<String>();
+        var exceptionTypes = new ArrayList<String>();
+        int codeOffset = 0;
+        int codeLength = 0;
+        int count = u2();
+        for (int i = 0; i < count; i++) {
+            String attributeName = pool.getUtf8(u2());
+            int length = classFile.getInt();
+            int end = classFile.position() + length;
+            switch (attributeName) {
+                case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> {
+                    int annotationCount = u2();
+                    for (int annotation = 0; annotation < annotationCount; annotation++) {
+                        readAnnotation(annotationTypes);
+                    }
+                }
+                case "Exceptions" -> {
+                    int exceptionCount = u2();
+                    for (int exception = 0; exception < exceptionCount; exception++) {
+                        exceptionTypes.add(toTypeName(pool.getClassName(u2())));
+                    }
+                }
+                case "Code" -> {
+                    // Skip max stack and max locals
+                    classFile.position(classFile.position() + 4);
+                    codeLength = classFile.getInt();
+                    codeOffset = classFile.position();
+                }
+                default -> {
+                }
+            }
+            classFile.position(end);
+        }
+        return new Member(name, descriptor, annotationTypes, exceptionTypes, codeOffset, codeLength);
+    }
+
+    /**
+     * Collects the type of the annotation, and the types of nested annotations, enums and classes used as its values.
+     */
+    private void readAnnotation(List<String> types) {
+        types.add(pool.getUtf8(u2()));
+        int pairCount = u2();
+        for (int pair = 0; pair < pairCount; pair++) {
+            // Skip the name of the element
+            u2();
+            readElementValue(types);
+        }
+    }
+
+    private void readElementValue(List<String> types) {
+        int tag = classFile.get();
+        switch (tag) {
+            case 'e' -> {
+                types.add(pool.getUtf8(u2()));
+                // Skip the name of the enum constant
+                u2();
+            }
+            case 'c' -> types.add(pool.getUtf8(u2()));
+            case '@' -> readAnnotation(types);
+            case '[' -> {
+                int count = u2();
+                for (int i = 0; i < count; i++) {
+                    readElementValue(types);
+                }
+            }
+            // Primitive and string constants
+            default -> u2();
+        }
+    }
+
+    private void visitCode(int start, int length, ReferenceVisitor visitor) {
+        int end = start + length;
+        int offset = start;
+        while (offset < end) {
+            int opcode = u1(offset);
+            switch (opcode) {
+                case LDC -> visitConstant(u1(offset + 1), visitor);
+                case LDC_W, LDC2_W -> visitConstant(u2(offset + 1), visitor);
+                case GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD -> {
+                    int index = u2(offset + 1);
+                    visitor.visitType(toTypeName(pool.getMemberClassName(index)));
+                    visitor.visitType(pool.getMemberDescriptor(index));
+                }
+                case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE -> {
+                    int index = u2(offset + 1);
+                    visitor.visitMethod(toTypeName(pool.getMemberClassName(index)), pool.getMemberName(index) + pool.getMemberDescriptor(index));
+                }
+                case NEW, ANEWARRAY, CHECKCAST, INSTANCEOF, MULTIANEWARRAY -> visitor.visitType(toTypeName(pool.getClassName(u2(offset + 1))));
+                default -> {
+                }
+            }
+            offset += instructionLength(opcode, offset, start);
+        }
+    }
+
+    private void visitConstant(int index, ReferenceVisitor visitor) {
+        switch (pool.getTag(index)) {
+            case ConstantPool.CONSTANT_CLASS -> {
+                visitor.visitType("Ljava/lang/Class;");
+                visitor.visitType(toTypeName(pool.getClassName(index)));
+            }
+            case ConstantPool.CONSTANT_STRING -> visitor.visitType("Ljava/lang/String;");
+            default -> {
+            }
+        }
+    }
+
+    private int instructionLength(int opcode, int offset, int codeStart) {
+        return switch (opcode) {
+            case TABLESWITCH -> {
+                int operands = alignOperands(offset, codeStart);
+                int low = classFile.getInt(operands + 4);
+                int high = classFile.getInt(operands + 8);
+                yield operands + 12 + (high - low + 1) * 4 - offset;
+            }
+            case LOOKUPSWITCH -> {
+                int operands = alignOperands(offset, codeStart);
+                int pairCount = classFile.getInt(operands + 4);
+                yield operands + 8 + pairCount * 8 - offset;
+            }
+            case WIDE -> u1(offset + 1) == IINC ? 6 : 4;
+            default -> INSTRUCTION_LENGTHS[opcode];
+        };
+    }
+
+    /**
+     * The operands of switches start at the next multiple of four bytes from the start of the code.
+     */
+    private static int alignOperands(int offset, int codeStart) {
+        int operands = offset + 1;
+        return operands + (4 - (operands - codeStart) % 4) % 4;
+    }
+
+    /**
+     * Class constants name either a class, e.g. {@code org/gradle/api/Task}, or an array type by its descriptor.
+     */
+    private static String toTypeName(String className) {
+        return className.startsWith("[")
+            ? className
+            : "L" + className + ";";
+    }
+
+    private int u1(int offset) {
+        return classFile.get(offset) & 0xff;
+    }
+
+    private int u2(int offset) {
+        return classFile.getShort(offset) & 0xffff;
+    }
+
+    private int u2() {
+        return classFile.getShort() & 0xffff;
+    }
+
+    private static void setLength(int length, int... opcodes) {
+        for (int opcode : opcodes) {
+            INSTRUCTION_LENGTHS[opcode] = (byte) length;
+        }
+    }
+}
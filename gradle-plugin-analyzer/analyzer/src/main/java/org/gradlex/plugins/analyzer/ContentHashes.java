@@ -0,0 +1,73 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Content hashes of classpath entries, used to key data persisted between runs.
+ */
+public class ContentHashes {
+    public static HashCode hash(Collection<Path> paths) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Path path : paths) {
+            hasher.putBytes(hash(path).asBytes());
+        }
+        return hasher.hash();
+    }
+
+    public static HashCode hash(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return hashDirectory(path);
+        } else if (Files.isRegularFile(path)) {
+            return MoreFiles.asByteSource(path).hash(Hashing.sha256());
+        } else {
+            // Missing entries on the classpath are ignored by the scope, too
+            return Hashing.sha256().hashString("missing", StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Hashes each class on the classpath, keyed by the WALA type name.
+     * Like the class hierarchy, the first entry containing a class wins.
+     */
+    public static ImmutableMap<String, HashCode> hashClasses(Collection<Path> paths) throws IOException {
+        var hashes = new LinkedHashMap<String, HashCode>();
+        for (Path path : paths) {
+            ClassFiles.visit(path, (typeName, content) -> {
+                if (!hashes.containsKey(typeName)) {
+                    hashes.put(typeName, content.hash(Hashing.sha256()));
+                }
+            });
+        }
+        return ImmutableMap.copyOf(hashes);
+    }
+
+    private static HashCode hashDirectory(Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk
+                .filter(Files::isRegularFile)
+                .sorted(Comparator.comparing(Path::toString))
+                .toList();
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Path file : files) {
+            hasher.putString(root.relativize(file).toString(), StandardCharsets.UTF_8);
+            hasher.putBytes(MoreFiles.asByteSource(file).hash(Hashing.sha256()).asBytes());
+        }
+        return hasher.hash();
+    }
+}
@@ -1,38 +1,524 @@
 package org.gradlex.plugins.analyzer;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import org.gradlex.plugins.analyzer.Analysis.AnalysisContext;
+import org.gradlex.plugins.analyzer.IncrementalState.StoredReport;
+import org.gradlex.plugins.analyzer.IncrementalState.TypeState;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.VisitDecision;
+import org.gradlex.plugins.analyzer.TypeRepository.ClosureCache;
+import org.gradlex.plugins.analyzer.TypeRepository.DeclaredReferences;
 import org.gradlex.plugins.analyzer.TypeRepository.TypeSet;
 import org.slf4j.event.Level;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class DefaultAnalyzer implements Analyzer {
+    private static final TypeSet STREAMED_TYPE_SET = TypeSet.ALL_EXTERNAL_REFERENCED_TYPES;
+
+    /**
+     * How many walked types the closure can get ahead of the analyses when streaming.
+     */
+    private static final int STREAM_CAPACITY = 1024;
+
     private final TypeRepository typeRepository;
+    private final int parallelism;
+    private final boolean streaming;
     private final Function<Object, String> formatter;
+    private final LongAdder referencesWalked;
 
     public DefaultAnalyzer(TypeRepository typeRepository, Function<Object, String> formatter) throws ClassHierarchyException, IOException {
+        this(typeRepository, 1, formatter);
+    }
+
+    /**
+     * @param parallelism the number of threads to analyze types on; types are analyzed on the calling thread when 1.
+     */
+    public DefaultAnalyzer(TypeRepository typeRepository, int parallelism, Function<Object, String> formatter) throws ClassHierarchyException, IOException {
+        this(typeRepository, parallelism, false, formatter);
+    }
+
+    /**
+     * @param streaming analyze the types of {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES} while the closure is still being walked.
+     */
+    public DefaultAnalyzer(TypeRepository typeRepository, int parallelism, boolean streaming, Function<Object, String> formatter) throws ClassHierarchyException, IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+        }
         this.typeRepository = typeRepository;
+        this.parallelism = parallelism;
+        this.streaming = streaming;
         this.formatter = formatter;
+        this.referencesWalked = typeRepository.getPerformanceMetrics().counter(PerformanceMetrics.REFERENCES_WALKED);
     }
 
     @Override
     public void analyze(TypeSet typeSet, Analysis analysis, Reporter reporter) {
+        analyze(List.of(new Binding(typeSet, analysis, reporter)));
+    }
+
+    @Override
+    public void analyze(List<Binding> bindings) {
+        if (streaming && bindings.stream().anyMatch(binding -> binding.typeSet() == STREAMED_TYPE_SET)) {
+            analyzeStreaming(bindings);
+            return;
+        }
         TypeResolverImpl typeResolver = typeRepository.getTypeResolver();
-        typeRepository.getTypeSet(typeSet).forEach(type -> {
-            analysis.analyzeType(type, new AnalysisContext() {
-                @Override
-                public TypeResolver getResolver() {
-                    return typeResolver;
+        BitSet[] bindingTypes = loadBindingTypes(bindings);
+        LongAdder[] analysisTimes = getAnalysisTimes(bindings);
+        int[] typeIds = collectTypes(bindingTypes);
+        if (parallelism == 1) {
+            for (int typeId : typeIds) {
+                analyzeType(typeId, bindings, bindingTypes, analysisTimes, typeResolver, index -> bindings.get(index).reporter());
+            }
+        } else {
+            // Buffer the reports of each type on the thread analyzing it,
+            // and replay them in the same order as a serial run would have produced them
+            var replay = new OrderedReplay(typeIds.length);
+            forEachIndex(typeIds.length, index -> {
+                var reports = new ArrayList<BufferedReport>();
+                analyzeType(typeIds[index], bindings, bindingTypes, analysisTimes, typeResolver,
+                    bindingIndex -> (level, message, args) -> reports.add(new BufferedReport(bindings.get(bindingIndex).reporter(), level, message, args)));
+                replay.complete(index, reports);
+            });
+        }
+    }
+
+    /**
+     * Analyzes the types of the closure on consumer threads while the closure is walked on a producer thread,
+     * handing them over through a bounded queue. Types only in other type sets are analyzed afterwards.
+     * <p>
+     * The reports of each type are spooled to disk as soon as the type has been analyzed,
+     * and replayed in the same order as a non-streaming run would have produced them once all types have been analyzed.
+     */
+    private void analyzeStreaming(List<Binding> bindings) {
+        TypeTable typeTable = typeRepository.getTypeTable();
+        TypeResolverImpl typeResolver = typeRepository.getTypeResolver();
+        var allTypes = new BitSet(typeTable.size());
+        allTypes.set(0, typeTable.size());
+        // Whatever the closure hands over is in the streamed type set
+        BitSet[] bindingTypes = new BitSet[bindings.size()];
+        var typeSets = new EnumMap<TypeSet, BitSet>(TypeSet.class);
+        for (int index = 0; index < bindings.size(); index++) {
+            TypeSet typeSet = bindings.get(index).typeSet();
+            bindingTypes[index] = typeSet == STREAMED_TYPE_SET
+                ? allTypes
+                : typeSets.computeIfAbsent(typeSet, typeRepository::getTypeSetIds);
+        }
+
+        LongAdder[] analysisTimes = getAnalysisTimes(bindings);
+        try (var spool = new ReportSpool(typeTable.size())) {
+            IntConsumer analyzeSpooled = typeId -> {
+                var reports = new ArrayList<ReportSpool.Report>();
+                analyzeType(typeId, bindings, bindingTypes, analysisTimes, typeResolver,
+                    bindingIndex -> (level, message, args) -> reports.add(new ReportSpool.Report(bindingIndex, level, message, args)));
+                spool.write(typeId, reports);
+            };
+            analyzeTypesStreaming(bindings, bindingTypes, analyzeSpooled);
+            spool.replay(report -> bindings.get(report.binding()).reporter().report(report.level(), report.message(), report.args()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Calls the action once for each type of the bindings, on the consumer threads for the types of the closure.
+     * Replaces the streamed type set in the binding types with the walked closure once it is complete.
+     */
+    private void analyzeTypesStreaming(List<Binding> bindings, BitSet[] bindingTypes, IntConsumer analyzeType) {
+        TypeTable typeTable = typeRepository.getTypeTable();
+
+        var queue = new ArrayBlockingQueue<Integer>(STREAM_CAPACITY);
+        var tasks = new ArrayList<Callable<Void>>();
+        tasks.add(() -> {
+            try {
+                typeRepository.streamTypeSet(STREAMED_TYPE_SET, typeId -> handOver(queue, typeId));
+            } finally {
+                for (int consumer = 0; consumer < parallelism; consumer++) {
+                    handOver(queue, TypeTable.NO_TYPE);
                 }
+            }
+            return null;
+        });
+        for (int consumer = 0; consumer < parallelism; consumer++) {
+            tasks.add(() -> {
+                while (true) {
+                    int typeId = queue.take();
+                    if (typeId == TypeTable.NO_TYPE) {
+                        return null;
+                    }
+                    analyzeType.accept(typeId);
+                }
+            });
+        }
+        runAll(tasks);
+
+        // Analyze the types of the other type sets that are not in the closure
+        BitSet streamedTypes = typeRepository.getTypeSetIds(STREAMED_TYPE_SET);
+        var remainingTypes = new BitSet(typeTable.size());
+        for (int index = 0; index < bindings.size(); index++) {
+            if (bindings.get(index).typeSet() == STREAMED_TYPE_SET) {
+                bindingTypes[index] = streamedTypes;
+            } else {
+                remainingTypes.or(bindingTypes[index]);
+            }
+        }
+        remainingTypes.andNot(streamedTypes);
+        int[] remainingIds = remainingTypes.stream().toArray();
+        forEachIndex(remainingIds.length, index -> analyzeType.accept(remainingIds[index]));
+    }
+
+    private static void handOver(BlockingQueue<Integer> queue, int typeId) {
+        try {
+            queue.put(typeId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs the tasks on a thread each, and fails as soon as one of them fails, interrupting the others.
+     */
+    private static void runAll(List<Callable<Void>> tasks) {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            var completion = new ExecutorCompletionService<Void>(executor);
+            tasks.forEach(completion::submit);
+            for (int i = 0; i < tasks.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Analyzes the types like {@link #analyze(List)}, reusing the results stored by the previous run
+     * for types whose class files and dependencies have not changed since.
+     * The results of this run are then stored in the same file.
+     * <p>
+     * The reports are the same as the ones of a full run, though unchanged types are not analyzed again,
+     * and are not walked again when loading {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES}.
+     * <p>
+     * Reports are passed on as soon as the types before them are done, like in {@link #analyze(List)},
+     * but the state keeps the reports of all types in memory until it is written at the end.
+     *
+     * @param configurationKey identifies the bindings, results are only reused if they were produced with the same key.
+     */
+    public void analyzeIncrementally(List<Binding> bindings, Path stateFile, String configurationKey) throws IOException {
+        var state = new IncrementalState(
+            typeRepository.getRuntimeLayer().getKey(),
+            configurationKey,
+            ContentHashes.hashClasses(typeRepository.getClasspath()));
+        IncrementalState loadedState = IncrementalState.read(stateFile);
+        IncrementalState previous = loadedState != null && loadedState.isCompatibleWith(state)
+            ? loadedState
+            : null;
+        Set<String> changedClasses = previous == null
+            ? Set.of()
+            : state.findChangedClasses(previous);
+        Function<IClass, TypeState> findUnchangedType = type -> previous == null
+            ? null
+            : previous.findUnchangedType(type.getName().toString(), changedClasses);
 
-                @Override
-                public void report(Level level, String message, Object... args) {
-                    reporter.report(level, message, Stream.of(args).map(formatter).toArray(Object[]::new));
+        typeRepository.useClosureCache(new ClosureCache() {
+            @Nullable
+            @Override
+            public Collection<String> findReferencedTypes(IClass type) {
+                TypeState previousState = findUnchangedType.apply(type);
+                if (previousState == null || previousState.referencedTypes() == null) {
+                    return null;
                 }
+                state.update(type.getName().toString(), new TypeState(previousState.dependencies(), previousState.referencedTypes(), ImmutableMap.of()));
+                return previousState.referencedTypes();
+            }
+
+            @Override
+            public void referencedTypesWalked(IClass type, Collection<String> referencedTypes, Collection<String> dependencies) {
+                state.update(type.getName().toString(), new TypeState(ImmutableSet.copyOf(dependencies), ImmutableList.copyOf(referencedTypes), ImmutableMap.of()));
+            }
+        });
+
+        TypeResolverImpl typeResolver = typeRepository.getTypeResolver();
+        TypeTable typeTable = typeRepository.getTypeTable();
+        BitSet[] bindingTypes = loadBindingTypes(bindings);
+        LongAdder[] analysisTimes = getAnalysisTimes(bindings);
+        int[] typeIds = collectTypes(bindingTypes);
+        var replay = new OrderedReplay(typeIds.length);
+        var changedTypes = new ArrayList<Integer>();
+        for (int index = 0; index < typeIds.length; index++) {
+            IClass type = typeTable.getClass(typeIds[index]);
+            List<Integer> bindingIndexes = findBindingIndexes(typeIds[index], bindingTypes);
+            TypeState previousState = findUnchangedType.apply(type);
+            if (previousState == null || !previousState.reports().keySet().containsAll(bindingIndexes)) {
+                changedTypes.add(index);
+                continue;
+            }
+            var reports = new ArrayList<BufferedReport>();
+            var storedReports = ImmutableMap.<Integer, ImmutableList<StoredReport>>builder();
+            bindingIndexes.forEach(bindingIndex -> {
+                ImmutableList<StoredReport> bindingReports = previousState.reports().get(bindingIndex);
+                Reporter reporter = bindings.get(bindingIndex).reporter();
+                bindingReports.forEach(report -> reports.add(new BufferedReport(reporter, report.level(), report.message(), report.args().toArray())));
+                storedReports.put(bindingIndex, bindingReports);
             });
+            replay.complete(index, reports);
+            state.update(type.getName().toString(), new TypeState(previousState.dependencies(), null, storedReports.build()));
+        }
+
+        forEachIndex(changedTypes.size(), changedIndex -> {
+            int index = changedTypes.get(changedIndex);
+            IClass type = typeTable.getClass(typeIds[index]);
+            var recordingResolver = new RecordingTypeResolver(typeResolver, type);
+            var reports = new ArrayList<BufferedReport>();
+            var storedReports = new TreeMap<Integer, List<StoredReport>>();
+            findBindingIndexes(typeIds[index], bindingTypes).forEach(bindingIndex -> storedReports.put(bindingIndex, new ArrayList<>()));
+            analyzeType(typeIds[index], bindings, bindingTypes, analysisTimes, recordingResolver, bindingIndex -> (level, message, args) -> {
+                reports.add(new BufferedReport(bindings.get(bindingIndex).reporter(), level, message, args));
+                storedReports.get(bindingIndex).add(new StoredReport(level, message, Stream.of(args).map(String::valueOf).collect(ImmutableList.toImmutableList())));
+            });
+            state.update(type.getName().toString(), new TypeState(
+                ImmutableSet.copyOf(recordingResolver.getTypeNames()),
+                null,
+                ImmutableMap.copyOf(Maps.transformValues(storedReports, ImmutableList::copyOf))));
+            replay.complete(index, reports);
         });
+
+        state.write(stateFile);
+    }
+
+    /**
+     * Returns the ids of the types in the type set of each binding, by the index of the binding.
+     */
+    private BitSet[] loadBindingTypes(List<Binding> bindings) {
+        var typeSets = new EnumMap<TypeSet, BitSet>(TypeSet.class);
+        return bindings.stream()
+            .map(binding -> typeSets.computeIfAbsent(binding.typeSet(), typeRepository::getTypeSetIds))
+            .toArray(BitSet[]::new);
+    }
+
+    /**
+     * The time spent in each analysis, by the index of the binding. Bindings of the same analysis class share their time.
+     */
+    private LongAdder[] getAnalysisTimes(List<Binding> bindings) {
+        PerformanceMetrics metrics = typeRepository.getPerformanceMetrics();
+        return bindings.stream()
+            .map(binding -> metrics.phase(PerformanceMetrics.ANALYSIS_PREFIX + binding.analysis().getClass().getSimpleName()))
+            .toArray(LongAdder[]::new);
+    }
+
+    private static int[] collectTypes(BitSet[] bindingTypes) {
+        // Visit each type once, and hand it to every analysis interested in it
+        var types = new BitSet();
+        for (BitSet typeSet : bindingTypes) {
+            types.or(typeSet);
+        }
+        return types.stream().toArray();
+    }
+
+    private static List<Integer> findBindingIndexes(int typeId, BitSet[] bindingTypes) {
+        return IntStream.range(0, bindingTypes.length)
+            .filter(index -> bindingTypes[index].get(typeId))
+            .boxed()
+            .toList();
+    }
+
+    private void analyzeType(int typeId, List<Binding> bindings, BitSet[] bindingTypes, LongAdder[] analysisTimes, TypeResolver typeResolver, IntFunction<Reporter> reporters) {
+        IClass type = typeRepository.getTypeTable().getClass(typeId);
+        typeRepository.getTypeResolver().prepare(type);
+        TypeScan scan = new TypeScan(type, typeRepository, typeResolver);
+        for (int index = 0; index < bindings.size(); index++) {
+            if (bindingTypes[index].get(typeId)) {
+                Binding binding = bindings.get(index);
+                var context = new BindingContext(scan, binding, reporters.apply(index));
+                var event = new AnalyzerEvents.AnalyzeType();
+                event.begin();
+                long start = System.nanoTime();
+                binding.analysis().analyzeType(type, context);
+                analysisTimes[index].add(System.nanoTime() - start);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.analysis = binding.analysis().getClass().getSimpleName();
+                    event.type = type.getName().toString();
+                    event.references = context.references;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the action for each index, concurrently if the analyzer is configured with a parallelism above 1.
+     */
+    private void forEachIndex(int count, IntConsumer action) {
+        ParallelTasks.forEachIndex(parallelism, count, action);
+    }
+
+    private record BufferedReport(Reporter reporter, Level level, String message, Object[] args) {
+    }
+
+    /**
+     * Passes the reports of the types on in the order of the types, as soon as the types before them are done.
+     * Only the reports of types analyzed ahead of an unfinished type are kept in memory.
+     * <p>
+     * The reporters are called from the threads analyzing the types, though never concurrently.
+     */
+    private static class OrderedReplay {
+        private final List<BufferedReport>[] pendingReports;
+        private int next;
+
+        @SuppressWarnings("unchecked")
+        OrderedReplay(int types) {
+            this.pendingReports = new List[types];
+        }
+
+        synchronized void complete(int index, List<BufferedReport> reports) {
+            pendingReports[index] = reports;
+            while (next < pendingReports.length && pendingReports[next] != null) {
+                pendingReports[next].forEach(report -> report.reporter().report(report.level(), report.message(), report.args()));
+                pendingReports[next] = null;
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Work done on a single type that can be shared between the analyses looking at the type.
+     */
+    private static class TypeScan {
+        private final IClass type;
+        private final TypeRepository typeRepository;
+        private final TypeResolver typeResolver;
+        private final Map<ReferenceEngine, List<Reference>> declaredReferences = new EnumMap<>(ReferenceEngine.class);
+        private final Map<IMethod, Optional<IMethod>> overriddenGradleApiMethods = new HashMap<>();
+
+        public TypeScan(IClass type, TypeRepository typeRepository, TypeResolver typeResolver) {
+            this.type = type;
+            this.typeRepository = typeRepository;
+            this.typeResolver = typeResolver;
+        }
+
+        public void walkReferences(IClass type, Function<IClass, VisitDecision> hierarchyFilter, ReferenceEngine engine, Consumer<Reference> handler) {
+            TypeReferenceWalker.walkInheritedReferences(type, typeResolver, hierarchyFilter, handler);
+            if (type != this.type) {
+                typeRepository.walkDeclaredReferences(type, typeResolver, engine, handler);
+                return;
+            }
+            declaredReferences.computeIfAbsent(engine, this::loadDeclaredReferences)
+                .forEach(handler);
+        }
+
+        private List<Reference> loadDeclaredReferences(ReferenceEngine engine) {
+            // Reuse the references walked when loading the closure of referenced types
+            DeclaredReferences walked = engine == ReferenceEngine.BYTECODE
+                ? typeRepository.findDeclaredReferences(type)
+                : null;
+            if (walked != null) {
+                if (typeResolver instanceof RecordingTypeResolver recordingResolver) {
+                    recordingResolver.recordTypeNames(walked.dependencies());
+                }
+                return walked.references();
+            }
+            var references = new ArrayList<Reference>();
+            typeRepository.walkDeclaredReferences(type, typeResolver, engine, references::add);
+            return references;
+        }
+
+        @Nullable
+        public IMethod findOverriddenGradleApiMethod(IMethod method) {
+            return overriddenGradleApiMethods.computeIfAbsent(method,
+                    key -> Optional.ofNullable(WalaUtil.findOverriddenMethod(key, TypeOrigin::isGradleApi)))
+                .orElse(null);
+        }
+    }
+
+    private class BindingContext implements AnalysisContext {
+        private final TypeScan scan;
+        private final Binding binding;
+        private final Reporter reporter;
+        // Only used by the thread analyzing the type
+        private int references;
+
+        /**
+         * @param reporter where the reports go, which may buffer them before they are passed on to the reporter of the binding.
+         */
+        public BindingContext(TypeScan scan, Binding binding, Reporter reporter) {
+            this.scan = scan;
+            this.binding = binding;
+            this.reporter = reporter;
+        }
+
+        @Override
+        public TypeResolver getResolver() {
+            return scan.typeResolver;
+        }
+
+        @Override
+        public void walkReferences(IClass type, Function<IClass, VisitDecision> hierarchyFilter, Consumer<Reference> handler) {
+            scan.walkReferences(type, hierarchyFilter, binding.referenceEngine(), reference -> {
+                references++;
+                referencesWalked.increment();
+                handler.accept(reference);
+            });
+        }
+
+        @Nullable
+        @Override
+        public IMethod findOverriddenGradleApiMethod(IMethod method) {
+            return scan.findOverriddenGradleApiMethod(method);
+        }
+
+        @Override
+        public boolean isEnabled(Level level) {
+            return binding.reporter().isEnabled(level);
+        }
+
+        @Override
+        public void report(Level level, String message, Object... args) {
+            // Only format the arguments of messages that are going to be reported
+            if (isEnabled(level)) {
+                reporter.report(level, message, Stream.of(args).map(formatter).toArray(Object[]::new));
+            }
+        }
     }
 }
@@ -0,0 +1,262 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * What an analysis run found out about each type, persisted so that the next run only needs to analyze
+ * the types that have changed, or whose dependencies have changed.
+ * <p>
+ * The state of a type records the reports of each analysis, the types it added to the reference closure,
+ * and the names of all classes these results were derived from.
+ * A type is unchanged if none of these classes were added, removed or changed on the classpath.
+ */
+public class IncrementalState {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalState.class);
+
+    private static final int MAGIC = 0x47504153;
+    private static final int VERSION = 1;
+
+    private final String runtimeKey;
+    private final String configurationKey;
+    private final ImmutableMap<String, HashCode> classHashes;
+    private final Map<String, TypeState> types;
+
+    public record StoredReport(Level level, String message, ImmutableList<String> args) {
+    }
+
+    /**
+     * @param dependencies the names of the classes the state was derived from, including the type itself.
+     * @param referencedTypes the types the type added to the reference closure, {@code null} if it was not part of the closure.
+     * @param reports the reports by the index of the analysis binding, for each analysis that analyzed the type.
+     */
+    public record TypeState(ImmutableSet<String> dependencies, @Nullable ImmutableList<String> referencedTypes, ImmutableMap<Integer, ImmutableList<StoredReport>> reports) {
+        public TypeState merge(TypeState other) {
+            var mergedReports = new TreeMap<>(reports);
+            mergedReports.putAll(other.reports);
+            return new TypeState(
+                ImmutableSet.copyOf(Sets.union(dependencies, other.dependencies)),
+                other.referencedTypes != null ? other.referencedTypes : referencedTypes,
+                ImmutableMap.copyOf(mergedReports));
+        }
+    }
+
+    public IncrementalState(String runtimeKey, String configurationKey, ImmutableMap<String, HashCode> classHashes) {
+        this(runtimeKey, configurationKey, classHashes, new ConcurrentHashMap<>());
+    }
+
+    private IncrementalState(String runtimeKey, String configurationKey, ImmutableMap<String, HashCode> classHashes, Map<String, TypeState> types) {
+        this.runtimeKey = runtimeKey;
+        this.configurationKey = configurationKey;
+        this.classHashes = classHashes;
+        this.types = types;
+    }
+
+    /**
+     * Whether the results of the other state can be used in this one, i.e. they were produced
+     * by the same analyses against the same runtime.
+     */
+    public boolean isCompatibleWith(IncrementalState other) {
+        return runtimeKey.equals(other.runtimeKey) && configurationKey.equals(other.configurationKey);
+    }
+
+    /**
+     * Returns the names of the classes that were added, removed or changed since the previous state.
+     */
+    public Set<String> findChangedClasses(IncrementalState previous) {
+        return Sets.union(classHashes.keySet(), previous.classHashes.keySet()).stream()
+            .filter(typeName -> !Objects.equals(classHashes.get(typeName), previous.classHashes.get(typeName)))
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the state of the type if none of its dependencies are among the changed classes.
+     */
+    @Nullable
+    public TypeState findUnchangedType(String typeName, Set<String> changedClasses) {
+        TypeState state = types.get(typeName);
+        if (state == null || state.dependencies().stream().anyMatch(changedClasses::contains)) {
+            return null;
+        }
+        return state;
+    }
+
+    public void update(String typeName, TypeState state) {
+        types.merge(typeName, state, TypeState::merge);
+    }
+
+    public void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporaryFile))))) {
+                writeTo(output);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void writeTo(DataOutputStream output) throws IOException {
+        // Strings are stored once, and referenced by index
+        var strings = new LinkedHashMap<String, Integer>();
+        classHashes.keySet().forEach(typeName -> strings.putIfAbsent(typeName, strings.size()));
+        types.forEach((typeName, state) -> {
+            strings.putIfAbsent(typeName, strings.size());
+            state.dependencies().forEach(dependency -> strings.putIfAbsent(dependency, strings.size()));
+            if (state.referencedTypes() != null) {
+                state.referencedTypes().forEach(referencedType -> strings.putIfAbsent(referencedType, strings.size()));
+            }
+            state.reports().values().forEach(reports -> reports.forEach(report -> {
+                strings.putIfAbsent(report.message(), strings.size());
+                report.args().forEach(arg -> strings.putIfAbsent(arg, strings.size()));
+            }));
+        });
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(runtimeKey);
+        output.writeUTF(configurationKey);
+        output.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            output.writeUTF(string);
+        }
+        output.writeInt(classHashes.size());
+        for (Map.Entry<String, HashCode> entry : classHashes.entrySet()) {
+            output.writeInt(strings.get(entry.getKey()));
+            byte[] hash = entry.getValue().asBytes();
+            output.writeByte(hash.length);
+            output.write(hash);
+        }
+        output.writeInt(types.size());
+        for (Map.Entry<String, TypeState> entry : types.entrySet()) {
+            TypeState state = entry.getValue();
+            output.writeInt(strings.get(entry.getKey()));
+            writeStrings(output, state.dependencies(), strings);
+            output.writeBoolean(state.referencedTypes() != null);
+            if (state.referencedTypes() != null) {
+                writeStrings(output, state.referencedTypes(), strings);
+            }
+            output.writeInt(state.reports().size());
+            for (Map.Entry<Integer, ImmutableList<StoredReport>> reports : state.reports().entrySet()) {
+                output.writeInt(reports.getKey());
+                output.writeInt(reports.getValue().size());
+                for (StoredReport report : reports.getValue()) {
+                    output.writeByte(report.level().ordinal());
+                    output.writeInt(strings.get(report.message()));
+                    writeStrings(output, report.args(), strings);
+                }
+            }
+        }
+    }
+
+    private static void writeStrings(DataOutputStream output, Iterable<String> values, Map<String, Integer> strings) throws IOException {
+        var indexes = new ArrayList<Integer>();
+        values.forEach(value -> indexes.add(strings.get(value)));
+        output.writeInt(indexes.size());
+        for (int index : indexes) {
+            output.writeInt(index);
+        }
+    }
+
+    /**
+     * Reads the state stored by a previous run, returns {@code null} if there is none or it cannot be read.
+     */
+    @Nullable
+    public static IncrementalState read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unsupported incremental state format: " + file);
+            }
+            String runtimeKey = input.readUTF();
+            String configurationKey = input.readUTF();
+            int stringCount = input.readInt();
+            List<String> strings = new ArrayList<>(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                strings.add(input.readUTF());
+            }
+            int classCount = input.readInt();
+            var classHashes = ImmutableMap.<String, HashCode>builderWithExpectedSize(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String typeName = strings.get(input.readInt());
+                byte[] hash = new byte[input.readUnsignedByte()];
+                input.readFully(hash);
+                classHashes.put(typeName, HashCode.fromBytes(hash));
+            }
+            Level[] levels = Level.values();
+            int typeCount = input.readInt();
+            var types = new ConcurrentHashMap<String, TypeState>();
+            for (int i = 0; i < typeCount; i++) {
+                String typeName = strings.get(input.readInt());
+                var dependencies = ImmutableSet.copyOf(readStrings(input, strings));
+                var referencedTypes = input.readBoolean()
+                    ? readStrings(input, strings)
+                    : null;
+                int reportsCount = input.readInt();
+                var reports = ImmutableMap.<Integer, ImmutableList<StoredReport>>builderWithExpectedSize(reportsCount);
+                for (int j = 0; j < reportsCount; j++) {
+                    int binding = input.readInt();
+                    int reportCount = input.readInt();
+                    var bindingReports = ImmutableList.<StoredReport>builderWithExpectedSize(reportCount);
+                    for (int k = 0; k < reportCount; k++) {
+                        Level level = levels[input.readByte()];
+                        String message = strings.get(input.readInt());
+                        bindingReports.add(new StoredReport(level, message, readStrings(input, strings)));
+                    }
+                    reports.put(binding, bindingReports.build());
+                }
+                types.put(typeName, new TypeState(dependencies, referencedTypes, reports.build()));
+            }
+            return new IncrementalState(runtimeKey, configurationKey, classHashes.build(), types);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read incremental state {}, analyzing all types", file, e);
+            return null;
+        }
+    }
+
+    private static ImmutableList<String> readStrings(DataInputStream input, List<String> strings) throws IOException {
+        int count = input.readInt();
+        var result = ImmutableList.<String>builderWithExpectedSize(count);
+        for (int i = 0; i < count; i++) {
+            result.add(strings.get(input.readInt()));
+        }
+        return result.build();
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalState (" + types.size() + " types)";
+    }
+}
@@ -0,0 +1,70 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.shrike.shrikeBT.IInstruction;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decoded instructions of method bodies, shared by the reference closure and all analyses using the same {@link TypeRepository}.
+ * <p>
+ * The cache is bounded by the total number of cached instructions, so that the bodies of a large plugin
+ * are not all kept in memory at once. Least recently used methods are evicted first, and decoded again when needed.
+ */
+public class InstructionCache {
+    /**
+     * Roughly 30 MB of decoded instructions.
+     */
+    public static final long DEFAULT_MAXIMUM_INSTRUCTIONS = 1_000_000;
+
+    private final LoadingCache<IMethod, IInstruction[]> cache;
+    private final LongAdder decodedInstructions = new LongAdder();
+
+    /**
+     * @param maximumInstructions the number of instructions to keep at most, 0 disables caching.
+     */
+    public InstructionCache(long maximumInstructions) {
+        if (maximumInstructions < 0) {
+            throw new IllegalArgumentException("Maximum instructions must not be negative, but was " + maximumInstructions);
+        }
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maximumInstructions)
+            // Count empty bodies too, so that abstract methods cannot fill the cache for free
+            .<IMethod, IInstruction[]>weigher((method, instructions) -> instructions.length + 1)
+            .recordStats()
+            .build(CacheLoader.from(this::decode));
+    }
+
+    public IInstruction[] getInstructions(IMethod method) {
+        return cache.getUnchecked(method);
+    }
+
+    private IInstruction[] decode(IMethod method) {
+        IInstruction[] instructions = WalaUtil.instructions(method);
+        decodedInstructions.add(instructions.length);
+        return instructions;
+    }
+
+    /**
+     * The number of instructions decoded since the cache was created, including the ones decoded again after being evicted.
+     */
+    public long getDecodedInstructions() {
+        return decodedInstructions.sum();
+    }
+
+    /**
+     * Hits, misses and evictions since the cache was created.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "InstructionCache (" + cache.size() + " methods, " + stats() + ")";
+    }
+}
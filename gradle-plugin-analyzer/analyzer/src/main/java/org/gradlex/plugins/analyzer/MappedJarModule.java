@@ -0,0 +1,379 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableList;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A jar whose entries are read from a memory-mapped view of the file, instead of through {@link java.util.jar.JarFile}.
+ * <p>
+ * The central directory is parsed once when the module is opened, including ZIP64 archives.
+ * Stored entries are copied straight from the mapped file, deflated ones are inflated from it
+ * into a single array of the final size, so reading a class does not go through intermediate buffers.
+ * Nested jars are modules read from a slice of the mapped file if stored, or from their inflated content.
+ * <p>
+ * The file stays mapped until the module is closed. Entry streams never point into the mapping,
+ * and reads of the mapping are guarded against the module being closed at the same time,
+ * so reading an entry of a closed module fails instead of accessing unmapped memory.
+ */
+final class MappedJarModule implements Module, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedJarModule.class);
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAXIMUM_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MARKER = 0xffffffffL;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final String path;
+    private final ByteBuffer buffer;
+    // The module of the mapped file, this module unless it is nested in another jar
+    private final MappedJarModule root;
+    // Of the mapped file, read while reading from the mapping and written while unmapping it
+    private final ReadWriteLock lock;
+    private final ImmutableList<Entry> entries;
+    // Guarded by the lock
+    private boolean closed;
+
+    private MappedJarModule(String path, ByteBuffer buffer, @Nullable MappedJarModule parent) throws IOException {
+        this.path = path;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.root = parent == null ? this : parent.root;
+        this.lock = parent == null ? new ReentrantReadWriteLock() : parent.lock;
+        this.entries = readCentralDirectory();
+    }
+
+    static MappedJarModule open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Jar is too large to be mapped: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedJarModule(path.toString(), mapped, null);
+        }
+    }
+
+    /**
+     * Unmaps the file right away instead of when the buffer is garbage collected, so that the file can be deleted or replaced.
+     * Closing a nested module does nothing, its content belongs to the jar it is nested in.
+     */
+    @Override
+    public void close() {
+        if (root != this) {
+            return;
+        }
+        // Waits for reads of the mapping to finish
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (buffer instanceof MappedByteBuffer mapped) {
+                unmap(mapped);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Locks the mapping against being unmapped while reading from it, fails if it has been unmapped already.
+     */
+    private Lock lockOpen() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        if (root.closed) {
+            readLock.unlock();
+            throw new IllegalStateException("Jar has been closed: " + path);
+        }
+        return readLock;
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Looked up reflectively, there is no supported way to unmap a file on Java 21
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released when the buffer is garbage collected instead
+            LOGGER.debug("Could not unmap {}", buffer, e);
+        }
+    }
+
+    @Override
+    public Iterator<? extends ModuleEntry> getEntries() {
+        return entries.iterator();
+    }
+
+    private ImmutableList<Entry> readCentralDirectory() throws IOException {
+        int end = findEndOfCentralDirectory();
+        long count = u2(end + 10);
+        long offset = u4(end + 16);
+        if (count == 0xffff || offset == ZIP64_MARKER) {
+            int locator = end - 20;
+            if (locator < 0 || buffer.getInt(locator) != ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+                throw new ZipException("Missing ZIP64 end of central directory locator in " + path);
+            }
+            int zip64End = toOffset(buffer.getLong(locator + 8));
+            if (buffer.getInt(zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Invalid ZIP64 end of central directory in " + path);
+            }
+            count = buffer.getLong(zip64End + 32);
+            offset = buffer.getLong(zip64End + 48);
+        }
+
+        var result = ImmutableList.<Entry>builderWithExpectedSize((int) count);
+        int header = toOffset(offset);
+        for (long i = 0; i < count; i++) {
+            if (buffer.getInt(header) != CENTRAL_DIRECTORY_HEADER) {
+                throw new ZipException("Invalid central directory header at " + header + " in " + path);
+            }
+            int method = u2(header + 10);
+            long compressedSize = u4(header + 20);
+            long size = u4(header + 24);
+            int nameLength = u2(header + 28);
+            int extraLength = u2(header + 30);
+            int commentLength = u2(header + 32);
+            long localHeaderOffset = u4(header + 42);
+            String name = string(header + 46, nameLength);
+
+            // ZIP64 sizes and offsets are only present in the extra field for the values that did not fit
+            int extra = header + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = u2(extra);
+                int length = u2(extra + 2);
+                if (id == ZIP64_EXTRA_FIELD) {
+                    int value = extra + 4;
+                    if (size == ZIP64_MARKER) {
+                        size = buffer.getLong(value);
+                        value += 8;
+                    }
+                    if (compressedSize == ZIP64_MARKER) {
+                        compressedSize = buffer.getLong(value);
+                        value += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MARKER) {
+                        localHeaderOffset = buffer.getLong(value);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            if (!name.endsWith("/")) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new ZipException("Entry " + name + " is too large in " + path);
+                }
+                result.add(new Entry(name, method, toOffset(compressedSize), (int) size, toOffset(localHeaderOffset)));
+            }
+            header = extraEnd + commentLength;
+        }
+        return result.build();
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int first = Math.max(0, last - MAXIMUM_COMMENT_SIZE);
+        for (int offset = last; offset >= first; offset--) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY) {
+                return offset;
+            }
+        }
+        throw new ZipException("Not a jar file: " + path);
+    }
+
+    private int toOffset(long value) throws ZipException {
+        if (value < 0 || value > buffer.limit()) {
+            throw new ZipException("Invalid size or offset " + value + " in " + path);
+        }
+        return (int) value;
+    }
+
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+    private long u4(int offset) {
+        return buffer.getInt(offset) & 0xffffffffL;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedJarModule " + path;
+    }
+
+    private class Entry implements ModuleEntry {
+        private final String name;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int localHeaderOffset;
+
+        private Entry(String name, int method, int compressedSize, int size, int localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isClassFile() {
+            return name.endsWith(".class");
+        }
+
+        @Override
+        public boolean isSourceFile() {
+            return name.endsWith(".java");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            Lock readLock = lockOpen();
+            try {
+                return new ByteArrayInputStream(getContent());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        /**
+         * Copies the entry out of the mapping, so that the content stays readable after the module is closed.
+         */
+        private byte[] getContent() throws ZipException {
+            ByteBuffer data = getData();
+            return switch (method) {
+                case STORED -> {
+                    byte[] content = new byte[data.remaining()];
+                    data.get(content);
+                    yield content;
+                }
+                case DEFLATED -> inflate(data);
+                default -> throw new ZipException("Unsupported compression method " + method + " for " + name + " in " + path);
+            };
+        }
+
+        private ByteBuffer getData() throws ZipException {
+            if (buffer.getInt(localHeaderOffset) != LOCAL_FILE_HEADER) {
+                throw new ZipException("Invalid local header for " + name + " in " + path);
+            }
+            // The extra field of the local header can differ from the one in the central directory
+            int dataOffset = localHeaderOffset + 30 + u2(localHeaderOffset + 26) + u2(localHeaderOffset + 28);
+            return buffer.slice(toOffset(dataOffset), compressedSize);
+        }
+
+        private byte[] inflate(ByteBuffer data) throws ZipException {
+            byte[] result = new byte[size];
+            var inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                int inflated = 0;
+                boolean paddingAdded = false;
+                while (inflated < size) {
+                    int count = inflater.inflate(result, inflated, size - inflated);
+                    if (count == 0) {
+                        if (!inflater.needsInput() || paddingAdded) {
+                            throw new ZipException("Truncated entry " + name + " in " + path);
+                        }
+                        // Raw inflation may need an extra byte past the end of the compressed data
+                        inflater.setInput(new byte[1]);
+                        paddingAdded = true;
+                    }
+                    inflated += count;
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid compressed data for " + name + " in " + path + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        public boolean isModuleFile() {
+            return name.endsWith(".jar") || name.endsWith(".war");
+        }
+
+        @Override
+        public Module asModule() {
+            Lock readLock = lockOpen();
+            try {
+                ByteBuffer data = getData();
+                ByteBuffer content = switch (method) {
+                    case STORED -> data;
+                    case DEFLATED -> ByteBuffer.wrap(inflate(data));
+                    default -> throw new ZipException("Unsupported compression method " + method + " for " + name + " in " + path);
+                };
+                return new MappedJarModule(this.toString(), content, MappedJarModule.this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public String getClassName() {
+            return name.substring(0, name.length() - ".class".length());
+        }
+
+        @Override
+        public Module getContainer() {
+            return MappedJarModule.this;
+        }
+
+        @Override
+        public String toString() {
+            return path + "!/" + name;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.gradlex.plugins.analyzer;
+
+import org.slf4j.event.Level;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the messages reported by an analysis, so that they can be read back sorted by their text, without duplicates.
+ * <p>
+ * Messages are kept in memory until they take up more than a given number of characters,
+ * and are then written to disk as a sorted run. Reading the messages merges the runs,
+ * so memory use stays flat no matter how many messages are reported.
+ * Of messages with the same text, the one reported first is kept.
+ */
+public final class MessageSpool implements Closeable {
+    public static final long DEFAULT_MAXIMUM_BUFFERED_CHARS = 1 << 20;
+
+    private static final Level[] LEVELS = Level.values();
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::message).thenComparingLong(Entry::sequence);
+
+    private final Path directory;
+    private final long maximumBufferedChars;
+    private final List<Entry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long bufferedChars;
+    private long sequence;
+
+    public MessageSpool(Path directory) {
+        this(directory, DEFAULT_MAXIMUM_BUFFERED_CHARS);
+    }
+
+    public MessageSpool(Path directory, long maximumBufferedChars) {
+        this.directory = directory;
+        this.maximumBufferedChars = maximumBufferedChars;
+    }
+
+    /**
+     * Called by the threads analyzing types, so it can be called concurrently.
+     */
+    public synchronized void add(Level level, String message) {
+        buffer.add(new Entry(level, message, sequence++));
+        bufferedChars += message.length();
+        if (bufferedChars > maximumBufferedChars) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write messages to " + directory, e);
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return sequence == 0;
+    }
+
+    /**
+     * Hands the messages to the consumer in the order of their text, skipping duplicates.
+     */
+    public synchronized void forEachSorted(MessageConsumer consumer) throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(ORDER);
+            String previous = null;
+            for (Entry entry : buffer) {
+                if (!entry.message.equals(previous)) {
+                    consumer.accept(entry.level, entry.message);
+                    previous = entry.message;
+                }
+            }
+            return;
+        }
+
+        spill();
+        var readers = new ArrayList<RunReader>(runs.size());
+        try {
+            var queue = new PriorityQueue<RunReader>(runs.size(), Comparator.comparing(RunReader::current, ORDER));
+            for (Path run : runs) {
+                var reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            String previous = null;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                Entry entry = reader.current();
+                if (!entry.message.equals(previous)) {
+                    consumer.accept(entry.level, entry.message);
+                    previous = entry.message;
+                }
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(ORDER);
+        Path run = Files.createTempFile(directory, "messages", ".run");
+        runs.add(run);
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+            output.writeInt(buffer.size());
+            for (Entry entry : buffer) {
+                output.writeByte(entry.level.ordinal());
+                output.writeLong(entry.sequence);
+                // Not writeUTF(), which is limited to 64k bytes
+                byte[] message = entry.message.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(message.length);
+                output.write(message);
+            }
+        }
+        buffer.clear();
+        bufferedChars = 0;
+    }
+
+    /**
+     * Deletes the runs written to disk.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    @FunctionalInterface
+    public interface MessageConsumer {
+        void accept(Level level, String message) throws IOException;
+    }
+
+    private record Entry(Level level, String message, long sequence) {
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream input;
+        private int remaining;
+        private Entry current;
+
+        private RunReader(Path run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            this.remaining = input.readInt();
+        }
+
+        private Entry current() {
+            return current;
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            Level level = LEVELS[input.readByte()];
+            long sequence = input.readLong();
+            byte[] message = new byte[input.readInt()];
+            input.readFully(message);
+            current = new Entry(level, new String(message, StandardCharsets.UTF_8), sequence);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.base.Throwables;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+final class ParallelTasks {
+    private ParallelTasks() {
+    }
+
+    /**
+     * Runs the action for each index, concurrently if the parallelism is above 1.
+     * <p>
+     * Indexes are started in ascending order, so that the results of the first indexes are done first
+     * and can be passed on while later ones are still running.
+     */
+    static void forEachIndex(int parallelism, int count, IntConsumer action) {
+        if (parallelism == 1 || count < 2) {
+            IntStream.range(0, count).forEach(action);
+            return;
+        }
+        var nextIndex = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int index = nextIndex.getAndIncrement(); index < count; index = nextIndex.getAndIncrement()) {
+                try {
+                    action.accept(index);
+                } catch (RuntimeException | Error e) {
+                    // Stop the other workers from starting more indexes
+                    nextIndex.set(count);
+                    throw e;
+                }
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<?>> workers = IntStream.range(0, Math.min(parallelism, count))
+                .<Future<?>>mapToObj(__ -> pool.submit(worker))
+                .toList();
+            for (Future<?> future : workers) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        } finally {
+            // Interrupts the actions still running when one of them failed, or the caller was interrupted
+            pool.shutdownNow();
+        }
+    }
+}
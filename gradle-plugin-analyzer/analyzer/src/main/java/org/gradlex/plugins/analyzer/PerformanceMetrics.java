@@ -0,0 +1,95 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings of the phases of analyzing a plugin, and counters of the work done in them, recorded by {@link TypeRepository} and {@link DefaultAnalyzer}.
+ * <p>
+ * The time of a phase is summed up over all threads working on it,
+ * so phases running on multiple threads can take longer than the wall clock time.
+ * Phases and counters are listed in the order they were first recorded.
+ */
+public class PerformanceMetrics {
+    public static final String HIERARCHY = "hierarchy";
+    public static final String TYPE_TABLE = "typeTable";
+    public static final String TYPE_SET_PREFIX = "typeSet:";
+    public static final String ANALYSIS_PREFIX = "analysis:";
+
+    public static final String CLASSES_IN_SCOPE = "classesInScope";
+    public static final String TYPES_IN_SET_PREFIX = "typesInSet:";
+    public static final String REFERENCES_WALKED = "referencesWalked";
+    public static final String INSTRUCTIONS_DECODED = "instructionsDecoded";
+    public static final String PEAK_HEAP_BYTES = "peakHeapBytes";
+
+    private final Map<String, LongAdder> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+
+    /**
+     * The nanoseconds spent in the phase so far. Hot paths should keep the returned adder instead of looking it up again.
+     */
+    public synchronized LongAdder phase(String name) {
+        return phaseNanos.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Adds the time since the given {@link System#nanoTime()} to the phase.
+     */
+    public void recordPhase(String name, long startNanos) {
+        phase(name).add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * The value of the counter so far. Hot paths should keep the returned adder instead of looking it up again.
+     */
+    public synchronized LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public synchronized void setCounter(String name, long value) {
+        LongAdder counter = counter(name);
+        counter.reset();
+        counter.add(value);
+    }
+
+    /**
+     * Forgets the peak heap usage of the JVM so far, e.g. when a worker starts analyzing another plugin.
+     */
+    public static void resetPeakHeap() {
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    /**
+     * Records the peak heap usage since the last {@link #resetPeakHeap()}, as the sum of the peaks of the heap memory pools.
+     */
+    public void recordPeakHeap() {
+        setCounter(PEAK_HEAP_BYTES, ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .mapToLong(pool -> pool.getPeakUsage().getUsed())
+            .sum());
+    }
+
+    public synchronized ImmutableMap<String, Long> getPhaseMillis() {
+        return phaseNanos.entrySet().stream()
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, entry -> TimeUnit.NANOSECONDS.toMillis(entry.getValue().sum())));
+    }
+
+    public synchronized ImmutableMap<String, Long> getCounters() {
+        return counters.entrySet().stream()
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+    }
+
+    @Override
+    public String toString() {
+        return "PerformanceMetrics (phases in ms " + getPhaseMillis() + ", counters " + getCounters() + ")";
+    }
+}
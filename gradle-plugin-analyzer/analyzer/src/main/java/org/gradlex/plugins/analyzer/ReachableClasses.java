@@ -0,0 +1,165 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.Iterators;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Finds the runtime classes reachable from the classes on the classpath, by reading constant pools instead of loading classes.
+ * <p>
+ * Every class on the classpath is reachable, and so is every runtime class named in its constant pool,
+ * be it as a class constant or inside a descriptor or signature. The supertypes of reachable classes are reachable too,
+ * so that WALA can build a complete hierarchy for them. Classes only referenced from runtime classes are not reachable,
+ * as analyses never walk the bodies of runtime classes.
+ * <p>
+ * The supertypes of runtime classes are taken from a {@link RuntimeSnapshot} if there is one,
+ * otherwise the constant pools of the reachable runtime classes are read as well.
+ */
+final class ReachableClasses {
+    private final Predicate<String> isRuntimeClass;
+    private final Function<String, List<String>> runtimeSupertypes;
+    private final Set<String> reachable = new HashSet<>();
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+
+    private ReachableClasses(Predicate<String> isRuntimeClass, Function<String, List<String>> runtimeSupertypes) {
+        this.isRuntimeClass = isRuntimeClass;
+        this.runtimeSupertypes = runtimeSupertypes;
+    }
+
+    /**
+     * Returns the names of the reachable runtime classes, e.g. {@code org/gradle/api/Task}.
+     */
+    static Set<String> find(List<Module> runtimeModules, List<Module> classpathModules) {
+        Map<String, ModuleEntry> runtimeEntries = new HashMap<>();
+        // The first class with a name wins, like when WALA loads the classes
+        runtimeModules.forEach(module -> forEachClass(module, entry -> runtimeEntries.putIfAbsent(entry.getClassName(), entry)));
+        return find(runtimeEntries::containsKey, className -> {
+            ConstantPool pool = read(runtimeEntries.get(className));
+            List<String> supertypes = new ArrayList<>(pool.getInterfaceNames());
+            if (pool.getSuperName() != null) {
+                supertypes.add(pool.getSuperName());
+            }
+            return supertypes;
+        }, classpathModules);
+    }
+
+    /**
+     * Returns the names of the reachable runtime classes, using the supertypes in the snapshot.
+     */
+    static Set<String> find(RuntimeSnapshot snapshot, List<Module> classpathModules) {
+        return find(className -> snapshot.findSupertypes(className) != null, snapshot::findSupertypes, classpathModules);
+    }
+
+    private static Set<String> find(Predicate<String> isRuntimeClass, Function<String, List<String>> runtimeSupertypes, List<Module> classpathModules) {
+        var classes = new ReachableClasses(isRuntimeClass, runtimeSupertypes);
+        classpathModules.forEach(module -> forEachClass(module, classes::visitClasspathClass));
+        classes.visitQueue();
+        return classes.reachable;
+    }
+
+    /**
+     * Wraps the module so that it only contains the given classes, other entries are kept.
+     */
+    static Module filter(Module module, Set<String> classNames) {
+        return () -> Iterators.filter(module.getEntries(),
+            entry -> !entry.isClassFile() || classNames.contains(entry.getClassName()));
+    }
+
+    private void visitClasspathClass(ModuleEntry entry) {
+        ConstantPool pool = read(entry);
+        enqueueSupertypes(pool);
+        for (int index = 1; index < pool.size(); index++) {
+            switch (pool.getTag(index)) {
+                case ConstantPool.CONSTANT_CLASS -> enqueueName(pool.getClassName(index));
+                case ConstantPool.CONSTANT_UTF8 -> enqueueDescriptorTypes(pool.getUtf8(index));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void visitQueue() {
+        while (true) {
+            String className = queue.poll();
+            if (className == null) {
+                break;
+            }
+            runtimeSupertypes.apply(className).forEach(this::enqueue);
+        }
+    }
+
+    private void enqueueSupertypes(ConstantPool pool) {
+        if (pool.getSuperName() != null) {
+            enqueue(pool.getSuperName());
+        }
+        pool.getInterfaceNames().forEach(this::enqueue);
+    }
+
+    /**
+     * Class constants name either a class, or an array type by its descriptor.
+     */
+    private void enqueueName(String name) {
+        if (name.startsWith("[")) {
+            enqueueDescriptorTypes(name);
+        } else {
+            enqueue(name);
+        }
+    }
+
+    /**
+     * Enqueues everything that looks like a class in a descriptor or signature, e.g. {@code (Ljava/util/List<Lorg/gradle/api/Task;>;)V}.
+     * Strings that are not descriptors can yield names that are not classes, these are ignored.
+     */
+    private void enqueueDescriptorTypes(String descriptor) {
+        int start = descriptor.indexOf('L');
+        while (start >= 0) {
+            int end = start + 1;
+            while (end < descriptor.length() && descriptor.charAt(end) != ';' && descriptor.charAt(end) != '<') {
+                end++;
+            }
+            if (end < descriptor.length()) {
+                enqueue(descriptor.substring(start + 1, end));
+            }
+            start = descriptor.indexOf('L', end);
+        }
+    }
+
+    private void enqueue(String className) {
+        if (isRuntimeClass.test(className) && reachable.add(className)) {
+            queue.add(className);
+        }
+    }
+
+    private static void forEachClass(Module module, Consumer<ModuleEntry> action) {
+        Iterator<? extends ModuleEntry> entries = module.getEntries();
+        while (entries.hasNext()) {
+            ModuleEntry entry = entries.next();
+            if (entry.isClassFile() && !entry.getClassName().endsWith("module-info")) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    private static ConstantPool read(ModuleEntry entry) {
+        try (InputStream input = entry.getInputStream()) {
+            return ConstantPool.read(input.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read class " + entry.getName(), e);
+        }
+    }
+}
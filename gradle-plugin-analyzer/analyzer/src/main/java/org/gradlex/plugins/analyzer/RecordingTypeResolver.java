@@ -0,0 +1,138 @@
+package org.gradlex.plugins.analyzer;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.shrike.shrikeBT.IInstruction;
+import com.ibm.wala.types.TypeReference;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records the names of all types looked up through it, whether they can be resolved or not.
+ * <p>
+ * Used by incremental analysis to find out which classes the result of analyzing a type depends on.
+ */
+class RecordingTypeResolver implements TypeResolver {
+    private final TypeResolverImpl delegate;
+    private final Set<String> typeNames = new LinkedHashSet<>();
+    private final Set<IClass> types = new HashSet<>();
+
+    public RecordingTypeResolver(TypeResolverImpl delegate, IClass type) {
+        this.delegate = delegate;
+        record(type);
+    }
+
+    @Nullable
+    @Override
+    public TypeReference findReference(String name) {
+        TypeReference reference = delegate.findReference(name);
+        if (reference != null) {
+            record(reference);
+        } else {
+            record(name);
+        }
+        return reference;
+    }
+
+    @Nullable
+    @Override
+    public IClass findClass(TypeReference reference) {
+        record(reference);
+        IClass type = delegate.findClass(reference);
+        if (type != null) {
+            record(type);
+        }
+        return type;
+    }
+
+    @Nullable
+    @Override
+    public IClass findClass(String name) {
+        record(name);
+        IClass type = delegate.findClass(name);
+        if (type != null) {
+            record(type);
+        }
+        return type;
+    }
+
+    @Nullable
+    @Override
+    public IMethod resolveMethod(String typeName, String methodSignature) {
+        record(typeName);
+        IClass type = delegate.findClass(typeName);
+        if (type != null) {
+            record(type);
+        }
+        return delegate.resolveMethod(typeName, methodSignature);
+    }
+
+    public int findTypeId(String name) {
+        record(name);
+        return recordId(delegate.findTypeId(name));
+    }
+
+    public int findTypeId(TypeReference reference) {
+        record(reference);
+        return recordId(delegate.findTypeId(reference));
+    }
+
+    @Override
+    public IInstruction[] getInstructions(IMethod method) {
+        return delegate.getInstructions(method);
+    }
+
+    private int recordId(int id) {
+        if (id != TypeTable.NO_TYPE) {
+            record(delegate.getTypeTable().getClass(id));
+        }
+        return id;
+    }
+
+    /**
+     * The class and its supertypes.
+     */
+    public void record(IClass type) {
+        if (types.add(type)) {
+            typeNames.add(type.getName().toString());
+            WalaUtil.visitTypeHierarchy(type, superType -> {
+                typeNames.add(superType.getName().toString());
+                return types.add(superType);
+            });
+        }
+    }
+
+    /**
+     * Type names recorded by another resolver, e.g. when reusing results computed with it.
+     */
+    public void recordTypeNames(Collection<String> names) {
+        typeNames.addAll(names);
+    }
+
+    private void record(TypeReference reference) {
+        TypeReference elementType = reference.isArrayType()
+            ? reference.getInnermostElementType()
+            : reference;
+        typeNames.add(elementType.getName().toString());
+    }
+
+    private void record(String typeName) {
+        // Normalize to WALA type names, i.e. strip array dimensions and the trailing semicolon
+        String name = typeName;
+        while (name.startsWith("[")) {
+            name = name.substring(1);
+        }
+        if (name.endsWith(";")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        typeNames.add(name);
+    }
+
+    public Set<String> getTypeNames() {
+        return typeNames;
+    }
+}
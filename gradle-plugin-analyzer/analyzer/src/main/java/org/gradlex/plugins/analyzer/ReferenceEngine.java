@@ -0,0 +1,22 @@
+package org.gradlex.plugins.analyzer;
+
+/**
+ * How the declared references of a type are found, see {@link TypeReferenceWalker#walkDeclaredReferences(com.ibm.wala.classLoader.IClass, TypeResolver, java.util.function.Consumer)}.
+ */
+public enum ReferenceEngine {
+    /**
+     * Decodes the instructions of method bodies with WALA.
+     */
+    BYTECODE,
+
+    /**
+     * Reads the constant pool, the member descriptors and the annotations straight from the class file,
+     * only skimming method bodies for the constant pool entries they use.
+     * <p>
+     * This is a lot faster than decoding instructions, and finds the same references to classes, fields and methods.
+     * It does not report the primitive and {@code java.lang.Object} operand types of instructions,
+     * nor string constants of annotations, so it is meant for analyses that look for references to specific types and members,
+     * e.g. to triage a large batch of plugins before analyzing the interesting ones with {@link #BYTECODE}.
+     */
+    CONSTANT_POOL
+}
@@ -0,0 +1,427 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.core.util.strings.Atom;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import org.gradlex.plugins.analyzer.Reference.FieldDeclarationSource;
+import org.gradlex.plugins.analyzer.Reference.MethodBodySource;
+import org.gradlex.plugins.analyzer.Reference.MethodDeclarationSource;
+import org.gradlex.plugins.analyzer.Reference.Source;
+import org.gradlex.plugins.analyzer.Reference.TypeDeclarationSource;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitor;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk index of the declared references of the classes on the classpath,
+ * as produced by {@link TypeReferenceWalker#walkDeclaredReferences(IClass, TypeResolver, Consumer)}.
+ * <p>
+ * The index stores what the walker visits in symbolic form, i.e. as the type names and method signatures it would resolve,
+ * so an index created for one classpath can be replayed against another.
+ * Each jar or directory is indexed as a whole the first time one of its classes is walked,
+ * and the index is keyed by the content hash of the jar or directory, so that unchanged jars are never walked again.
+ * <p>
+ * Entries are loaded or indexed independently of each other, so that walking the classes of one entry
+ * does not wait for another entry to be indexed.
+ */
+public class ReferenceIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceIndex.class);
+
+    private static final int MAGIC = 0x47504149;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".refs";
+    private static final int NOT_INDEXED = -1;
+    private static final Consumer<Reference> UNRESOLVED = reference -> {
+        throw new IllegalStateException("Recorded references should not be resolved");
+    };
+
+    private final Path directory;
+    private final ImmutableList<Path> classpath;
+    // The classpath entry WALA loaded each class from is found via the module of the class
+    private final Map<Module, Integer> entriesByModule = new IdentityHashMap<>();
+    private final IClassHierarchy hierarchy;
+    private final TypeResolver typeResolver;
+    private final Map<Integer, CompletableFuture<ImmutableMap<String, ClassReferences>>> entries = new ConcurrentHashMap<>();
+
+    public enum SourceKind {
+        TYPE_DECLARATION,
+        FIELD_DECLARATION,
+        METHOD_DECLARATION,
+        METHOD_BODY
+    }
+
+    /**
+     * @param member the name of the field or the selector of the method, empty for types.
+     */
+    public record SourceSymbol(SourceKind kind, String member) {
+    }
+
+    public sealed interface TargetSymbol {
+    }
+
+    /**
+     * A type name as found in bytecode, e.g. {@code Ljava/lang/String;}, resolved via {@link TypeResolver#findReference(String)}.
+     */
+    public record TypeNameTarget(String typeName) implements TargetSymbol {
+    }
+
+    public record TypeReferenceTarget(String loader, String typeName) implements TargetSymbol {
+    }
+
+    public record MethodSignatureTarget(String typeName, String methodSignature) implements TargetSymbol {
+    }
+
+    public record Event(int source, TargetSymbol target) {
+    }
+
+    public record ClassReferences(ImmutableList<SourceSymbol> sources, ImmutableList<Event> events) {
+    }
+
+    /**
+     * @param classpathModules the modules the hierarchy loaded the classpath from, in the same order as the classpath.
+     */
+    public ReferenceIndex(Path directory, List<Path> classpath, List<Module> classpathModules, IClassHierarchy hierarchy, TypeResolver typeResolver) {
+        if (classpath.size() != classpathModules.size()) {
+            throw new IllegalArgumentException("Expected a module for each of the " + classpath.size() + " classpath entries, but got " + classpathModules.size());
+        }
+        this.directory = directory;
+        this.classpath = ImmutableList.copyOf(classpath);
+        for (int index = 0; index < classpathModules.size(); index++) {
+            entriesByModule.put(classpathModules.get(index), index);
+        }
+        this.hierarchy = hierarchy;
+        this.typeResolver = typeResolver;
+    }
+
+    /**
+     * Walks the declared references of the type, replaying them from the index if the type comes from the classpath.
+     */
+    public void walkDeclaredReferences(IClass type, Consumer<Reference> handler) {
+        walkDeclaredReferences(type, typeResolver, handler);
+    }
+
+    /**
+     * Walks the declared references of the type, resolving the replayed references with the given resolver.
+     */
+    public void walkDeclaredReferences(IClass type, TypeResolver resolver, Consumer<Reference> handler) {
+        ClassReferences references = findClassReferences(type);
+        if (references == null) {
+            TypeReferenceWalker.walkDeclaredReferences(type, resolver, handler);
+        } else {
+            replay(type, references, resolver, handler);
+        }
+    }
+
+    @Nullable
+    private ClassReferences findClassReferences(IClass type) {
+        int entry = findEntry(type);
+        if (entry == NOT_INDEXED) {
+            return null;
+        }
+        CompletableFuture<ImmutableMap<String, ClassReferences>> classes = entries.get(entry);
+        if (classes == null) {
+            var created = new CompletableFuture<ImmutableMap<String, ClassReferences>>();
+            classes = entries.putIfAbsent(entry, created);
+            if (classes == null) {
+                // Other threads walking classes of the same entry wait for this one to index it
+                classes = created;
+                try {
+                    created.complete(loadOrIndex(entry));
+                } catch (RuntimeException | Error e) {
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return classes.join().get(type.getName().toString());
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the classpath entry WALA loaded the class from, or {@link #NOT_INDEXED} for runtime and synthetic classes.
+     */
+    private int findEntry(IClass type) {
+        if (!(type instanceof ShrikeClass shrikeClass)) {
+            return NOT_INDEXED;
+        }
+        return entriesByModule.getOrDefault(shrikeClass.getModuleEntry().getContainer(), NOT_INDEXED);
+    }
+
+    private ImmutableMap<String, ClassReferences> loadOrIndex(int entry) {
+        try {
+            Path path = classpath.get(entry);
+            String key = ContentHashes.hash(path).toString();
+            Path file = directory.resolve(key + EXTENSION);
+            if (Files.isRegularFile(file)) {
+                try {
+                    return read(file, key);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not read reference index {}, recreating it", file, e);
+                }
+            }
+            ImmutableMap<String, ClassReferences> classes = index(entry);
+            write(file, key, classes);
+            return classes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ImmutableMap<String, ClassReferences> index(int entry) throws IOException {
+        var loader = hierarchy.getScope().getApplicationLoader();
+        var classes = new LinkedHashMap<String, ClassReferences>();
+        ClassFiles.visit(classpath.get(entry), (typeName, content) -> {
+            // Through the resolver, so that the type can be walked while others are being analyzed
+            IClass type = typeResolver.findClass(TypeReference.findOrCreate(loader, typeName));
+            if (type == null || findEntry(type) != entry) {
+                // Excluded, not loadable, or shadowed by an earlier classpath entry
+                return;
+            }
+            var recorder = new RecordingVisitorFactory();
+            TypeReferenceWalker.walkDeclaredReferences(type, recorder);
+            classes.put(typeName, recorder.build());
+        });
+        return ImmutableMap.copyOf(classes);
+    }
+
+    private void replay(IClass type, ClassReferences references, TypeResolver resolver, Consumer<Reference> handler) {
+        var visitors = new ReferenceVisitor[references.sources().size()];
+        for (Event event : references.events()) {
+            ReferenceVisitor visitor = visitors[event.source()];
+            if (visitor == null) {
+                visitor = new ReferenceVisitor(toSource(type, references.sources().get(event.source())), resolver, handler);
+                visitors[event.source()] = visitor;
+            }
+            switch (event.target()) {
+                case TypeNameTarget it -> {
+                    try {
+                        visitor.visitType(it.typeName());
+                    } catch (IllegalArgumentException ignored) {
+                        // Annotation values that look like class names but are not, the walker ignores these, too
+                    }
+                }
+                case TypeReferenceTarget it -> visitor.visitType(TypeReference.findOrCreate(
+                    hierarchy.getScope().getLoader(Atom.findOrCreateUnicodeAtom(it.loader())), it.typeName()));
+                case MethodSignatureTarget it -> visitor.visitMethod(it.typeName(), it.methodSignature());
+            }
+        }
+    }
+
+    private static Source toSource(IClass type, SourceSymbol symbol) {
+        return switch (symbol.kind()) {
+            case TYPE_DECLARATION -> new TypeDeclarationSource(type);
+            case FIELD_DECLARATION -> new FieldDeclarationSource(WalaUtil.findDeclaredField(type, Atom.findOrCreateUnicodeAtom(symbol.member())));
+            case METHOD_DECLARATION -> new MethodDeclarationSource(WalaUtil.findDeclaredMethod(type, Selector.make(symbol.member())));
+            case METHOD_BODY -> new MethodBodySource(WalaUtil.findDeclaredMethod(type, Selector.make(symbol.member())));
+        };
+    }
+
+    private static SourceSymbol toSymbol(Source source) {
+        return switch (source) {
+            case TypeDeclarationSource it -> new SourceSymbol(SourceKind.TYPE_DECLARATION, "");
+            case FieldDeclarationSource it -> new SourceSymbol(SourceKind.FIELD_DECLARATION, it.field().getName().toString());
+            case MethodDeclarationSource it -> new SourceSymbol(SourceKind.METHOD_DECLARATION, it.method().getSelector().toString());
+            case MethodBodySource it -> new SourceSymbol(SourceKind.METHOD_BODY, it.method().getSelector().toString());
+            default -> throw new IllegalStateException("Not a declared reference source: " + source);
+        };
+    }
+
+    /**
+     * Records what the walker visits instead of resolving it.
+     */
+    private class RecordingVisitorFactory extends ReferenceVisitorFactory {
+        private final Map<SourceSymbol, Integer> sources = new LinkedHashMap<>();
+        private final ImmutableList.Builder<Event> events = ImmutableList.builder();
+
+        public RecordingVisitorFactory() {
+            super(typeResolver, UNRESOLVED);
+        }
+
+        @Override
+        protected ReferenceVisitor createVisitor(Source source) {
+            int sourceIndex = sources.computeIfAbsent(toSymbol(source), __ -> sources.size());
+            return new ReferenceVisitor(source, typeResolver, UNRESOLVED) {
+                @Override
+                public void visitType(String typeName) {
+                    events.add(new Event(sourceIndex, new TypeNameTarget(typeName)));
+                }
+
+                @Override
+                public void visitType(TypeReference reference) {
+                    events.add(new Event(sourceIndex, new TypeReferenceTarget(
+                        reference.getClassLoader().getName().toString(), reference.getName().toString())));
+                }
+
+                @Override
+                public void visitMethod(String typeName, String methodSignature) {
+                    events.add(new Event(sourceIndex, new MethodSignatureTarget(typeName, methodSignature)));
+                }
+
+                @Override
+                public void visitMethod(IMethod method) {
+                    throw new IllegalStateException("Declared references should not target resolved methods: " + method);
+                }
+            };
+        }
+
+        public ClassReferences build() {
+            return new ClassReferences(ImmutableList.copyOf(sources.keySet()), events.build());
+        }
+    }
+
+    private void write(Path file, String key, ImmutableMap<String, ClassReferences> classes) throws IOException {
+        Files.createDirectories(directory);
+        // Multiple workers may be indexing the same jar at the same time
+        Path temporaryFile = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporaryFile))))) {
+                writeTo(output, key, classes);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static void writeTo(DataOutputStream output, String key, ImmutableMap<String, ClassReferences> classes) throws IOException {
+        // Strings are stored once, and referenced by index
+        var strings = new LinkedHashMap<String, Integer>();
+        classes.forEach((typeName, references) -> {
+            strings.putIfAbsent(typeName, strings.size());
+            references.sources().forEach(source -> strings.putIfAbsent(source.member(), strings.size()));
+            references.events().forEach(event -> {
+                switch (event.target()) {
+                    case TypeNameTarget it -> strings.putIfAbsent(it.typeName(), strings.size());
+                    case TypeReferenceTarget it -> {
+                        strings.putIfAbsent(it.loader(), strings.size());
+                        strings.putIfAbsent(it.typeName(), strings.size());
+                    }
+                    case MethodSignatureTarget it -> {
+                        strings.putIfAbsent(it.typeName(), strings.size());
+                        strings.putIfAbsent(it.methodSignature(), strings.size());
+                    }
+                }
+            });
+        });
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(key);
+        output.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            output.writeUTF(string);
+        }
+        output.writeInt(classes.size());
+        for (Map.Entry<String, ClassReferences> entry : classes.entrySet()) {
+            output.writeInt(strings.get(entry.getKey()));
+            ClassReferences references = entry.getValue();
+            output.writeInt(references.sources().size());
+            for (SourceSymbol source : references.sources()) {
+                output.writeByte(source.kind().ordinal());
+                output.writeInt(strings.get(source.member()));
+            }
+            output.writeInt(references.events().size());
+            for (Event event : references.events()) {
+                output.writeInt(event.source());
+                switch (event.target()) {
+                    case TypeNameTarget it -> {
+                        output.writeByte(0);
+                        output.writeInt(strings.get(it.typeName()));
+                    }
+                    case TypeReferenceTarget it -> {
+                        output.writeByte(1);
+                        output.writeInt(strings.get(it.loader()));
+                        output.writeInt(strings.get(it.typeName()));
+                    }
+                    case MethodSignatureTarget it -> {
+                        output.writeByte(2);
+                        output.writeInt(strings.get(it.typeName()));
+                        output.writeInt(strings.get(it.methodSignature()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static ImmutableMap<String, ClassReferences> read(Path file, String expectedKey) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unsupported reference index format: " + file);
+            }
+            String key = input.readUTF();
+            if (!key.equals(expectedKey)) {
+                throw new IOException("Reference index " + file + " has unexpected key " + key);
+            }
+            int stringCount = input.readInt();
+            List<String> strings = new ArrayList<>(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                strings.add(input.readUTF());
+            }
+            SourceKind[] kinds = SourceKind.values();
+            int classCount = input.readInt();
+            var classes = ImmutableMap.<String, ClassReferences>builderWithExpectedSize(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String typeName = strings.get(input.readInt());
+                int sourceCount = input.readInt();
+                var sources = ImmutableList.<SourceSymbol>builderWithExpectedSize(sourceCount);
+                for (int j = 0; j < sourceCount; j++) {
+                    sources.add(new SourceSymbol(kinds[input.readByte()], strings.get(input.readInt())));
+                }
+                int eventCount = input.readInt();
+                var events = ImmutableList.<Event>builderWithExpectedSize(eventCount);
+                for (int j = 0; j < eventCount; j++) {
+                    int source = input.readInt();
+                    TargetSymbol target = switch (input.readByte()) {
+                        case 0 -> new TypeNameTarget(strings.get(input.readInt()));
+                        case 1 -> new TypeReferenceTarget(strings.get(input.readInt()), strings.get(input.readInt()));
+                        case 2 -> new MethodSignatureTarget(strings.get(input.readInt()), strings.get(input.readInt()));
+                        default -> throw new IOException("Corrupt reference index: " + file);
+                    };
+                    events.add(new Event(source, target));
+                }
+                classes.put(typeName, new ClassReferences(sources.build(), events.build()));
+            }
+            return classes.build();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceIndex " + directory;
+    }
+}
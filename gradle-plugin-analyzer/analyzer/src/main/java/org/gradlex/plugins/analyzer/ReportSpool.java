@@ -0,0 +1,175 @@
+package org.gradlex.plugins.analyzer;
+
+import org.slf4j.event.Level;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the reports of analyzed types on disk until they can be replayed in the order of the type ids.
+ * <p>
+ * The reports of each type are appended to a temporary file as soon as the type has been analyzed,
+ * so only the position of each type in the file stays in memory, no matter in which order the types are analyzed.
+ * The file is only created once there is something to write, and is deleted when the spool is closed.
+ */
+final class ReportSpool implements Closeable {
+    private static final Level[] LEVELS = Level.values();
+
+    private final long[] offsets;
+    private final int[] lengths;
+    private final BitSet spooledTypes = new BitSet();
+    @Nullable
+    private FileChannel file;
+    private long size;
+
+    ReportSpool(int types) {
+        this.offsets = new long[types];
+        this.lengths = new int[types];
+    }
+
+    /**
+     * Called by the threads analyzing types, so it can be called concurrently.
+     */
+    void write(int typeId, List<Report> reports) {
+        if (reports.isEmpty()) {
+            return;
+        }
+        // Encoded outside the lock, only appending to the file is serialized
+        byte[] encoded = encode(reports);
+        synchronized (this) {
+            try {
+                if (file == null) {
+                    file = FileChannel.open(Files.createTempFile("analyzer-reports", ".spool"),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                writeFully(ByteBuffer.wrap(encoded), size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not spool reports", e);
+            }
+            offsets[typeId] = size;
+            lengths[typeId] = encoded.length;
+            spooledTypes.set(typeId);
+            size += encoded.length;
+        }
+    }
+
+    /**
+     * Hands the reports to the consumer ordered by the id of their type, and by the order they were reported in for each type.
+     */
+    synchronized void replay(Consumer<Report> consumer) {
+        try {
+            for (int typeId = spooledTypes.nextSetBit(0); typeId >= 0; typeId = spooledTypes.nextSetBit(typeId + 1)) {
+                var encoded = ByteBuffer.allocate(lengths[typeId]);
+                readFully(encoded, offsets[typeId]);
+                decode(encoded.array()).forEach(consumer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spooled reports", e);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += file.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spooled reports");
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encode(List<Report> reports) {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            output.writeInt(reports.size());
+            for (Report report : reports) {
+                output.writeInt(report.binding());
+                output.writeByte(report.level().ordinal());
+                writeString(output, report.message());
+                output.writeInt(report.args().length);
+                for (Object arg : report.args()) {
+                    // The arguments have been formatted already
+                    writeString(output, arg == null ? null : arg.toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Report> decode(byte[] encoded) throws IOException {
+        var input = new DataInputStream(new ByteArrayInputStream(encoded));
+        int count = input.readInt();
+        var reports = new ArrayList<Report>(count);
+        for (int i = 0; i < count; i++) {
+            int binding = input.readInt();
+            Level level = LEVELS[input.readByte()];
+            String message = readString(input);
+            Object[] args = new Object[input.readInt()];
+            for (int j = 0; j < args.length; j++) {
+                args[j] = readString(input);
+            }
+            reports.add(new Report(binding, level, message, args));
+        }
+        return reports;
+    }
+
+    private static void writeString(DataOutputStream output, @Nullable String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        // Not writeUTF(), which is limited to 64k bytes
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+        spooledTypes.clear();
+    }
+
+    /**
+     * @param binding the index of the binding whose analysis reported the message.
+     */
+    record Report(int binding, Level level, String message, Object[] args) {
+    }
+}
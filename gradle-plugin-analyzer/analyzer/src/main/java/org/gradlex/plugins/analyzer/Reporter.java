@@ -7,6 +7,14 @@ import java.util.Arrays;
 public interface Reporter {
     void report(Level level, String message, Object... args);
 
+    /**
+     * Whether messages of the level are reported at all.
+     * Analyses can check this to skip finding and formatting messages that would be dropped anyway.
+     */
+    default boolean isEnabled(Level level) {
+        return true;
+    }
+
     record Message(String fmt, Object... args) {
         @Override
         public boolean equals(Object o) {
@@ -36,4 +44,32 @@ public interface Reporter {
     default void report(Level level, Message message) {
         report(level, message.fmt, message.args);
     }
+
+    /**
+     * Reports the reference, only creating its message if the level is enabled.
+     */
+    default void report(Level level, Reference reference) {
+        if (isEnabled(level)) {
+            report(level, Reference.format(reference));
+        }
+    }
+
+    /**
+     * Only passes on messages of the given level and above.
+     */
+    static Reporter filtering(Level threshold, Reporter reporter) {
+        return new Reporter() {
+            @Override
+            public boolean isEnabled(Level level) {
+                return level.toInt() >= threshold.toInt() && reporter.isEnabled(level);
+            }
+
+            @Override
+            public void report(Level level, String message, Object... args) {
+                if (isEnabled(level)) {
+                    reporter.report(level, message, args);
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,162 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableList;
+import com.ibm.wala.classLoader.Module;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The immutable Gradle runtime part of a {@link TypeRepository}, shared by the repositories of multiple plugins.
+ * <p>
+ * WALA cannot chain class hierarchies, so every repository still loads the runtime classes into its own hierarchy.
+ * What the layer shares is the work that does not depend on the analyzed plugin:
+ * the opened runtime modules, the content hash of the runtime and the {@link RuntimeSnapshot}.
+ * A long-lived worker keeps the layer between plugins via {@link #shared(Collection, Path)},
+ * while the plugin's own classpath is added to a fresh scope for each repository and thrown away with it.
+ * Only the layer of the current runtime is kept. A replaced layer releases its modules once no repository uses it anymore.
+ */
+public class RuntimeLayer {
+    // Guarded by the class
+    @Nullable
+    private static LayerKey sharedKey;
+    @Nullable
+    private static RuntimeLayer shared;
+
+    private final ImmutableList<Path> runtime;
+    private final ImmutableList<Module> modules;
+    @Nullable
+    private final Path snapshotDirectory;
+    @Nullable
+    private String key;
+    @Nullable
+    private RuntimeSnapshot snapshot;
+    // The repositories using the layer, guarded by the layer
+    private int users;
+    private boolean replaced;
+    private boolean closed;
+
+    private RuntimeLayer(ImmutableList<Path> runtime, @Nullable Path snapshotDirectory) {
+        this.runtime = runtime;
+        this.modules = runtime.stream()
+            .map(TypeRepository::createModule)
+            .collect(ImmutableList.toImmutableList());
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * Creates a layer that is only used by a single repository.
+     */
+    public static RuntimeLayer create(Collection<Path> runtime, @Nullable Path snapshotDirectory) {
+        return new RuntimeLayer(ImmutableList.copyOf(runtime), snapshotDirectory);
+    }
+
+    /**
+     * Returns the layer for the given runtime shared by all repositories in this JVM,
+     * creating it if necessary, or if the runtime or its files have changed since.
+     */
+    public static synchronized RuntimeLayer shared(Collection<Path> runtime, @Nullable Path snapshotDirectory) {
+        LayerKey layerKey = new LayerKey(ImmutableList.copyOf(runtime), lastModified(runtime), snapshotDirectory);
+        if (shared == null || !layerKey.equals(sharedKey)) {
+            if (shared != null) {
+                shared.replace();
+            }
+            sharedKey = layerKey;
+            shared = create(runtime, snapshotDirectory);
+        }
+        return shared;
+    }
+
+    private static ImmutableList<Long> lastModified(Collection<Path> runtime) {
+        return runtime.stream()
+            .map(path -> {
+                try {
+                    return Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : -1L;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })
+            .collect(ImmutableList.toImmutableList());
+    }
+
+    public ImmutableList<Path> getRuntime() {
+        return runtime;
+    }
+
+    ImmutableList<Module> getModules() {
+        return modules;
+    }
+
+    /**
+     * Called by a repository using the shared layer, the layer keeps its modules open until the repository {@link #release() releases} it.
+     */
+    synchronized void acquire() {
+        if (closed) {
+            throw new IllegalStateException("Runtime layer has been replaced and closed: " + this);
+        }
+        users++;
+    }
+
+    synchronized void release() {
+        users--;
+        if (replaced && users == 0) {
+            closeModules();
+        }
+    }
+
+    private synchronized void replace() {
+        replaced = true;
+        if (users == 0) {
+            closeModules();
+        }
+    }
+
+    private void closeModules() {
+        closed = true;
+        modules.forEach(module -> {
+            if (module instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The content hash of the runtime, computed once per layer.
+     */
+    public synchronized String getKey() throws IOException {
+        if (key == null) {
+            key = RuntimeSnapshot.key(runtime);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the snapshot of the runtime if the layer is configured with a snapshot directory,
+     * loading or creating it on the first call.
+     */
+    @Nullable
+    public synchronized RuntimeSnapshot findSnapshot() throws IOException {
+        if (snapshot == null && snapshotDirectory != null && !runtime.isEmpty()) {
+            snapshot = RuntimeSnapshot.loadOrCreate(snapshotDirectory, getKey(), runtime);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return "RuntimeLayer " + runtime;
+    }
+
+    private record LayerKey(List<Path> runtime, List<Long> lastModified, @Nullable Path snapshotDirectory) {
+    }
+}
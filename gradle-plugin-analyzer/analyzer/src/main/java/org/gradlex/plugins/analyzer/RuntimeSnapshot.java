@@ -0,0 +1,186 @@
+package org.gradlex.plugins.analyzer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The classes of the Gradle runtime (the Gradle API jar, Groovy and Kotlin) and their direct supertypes, persisted between runs.
+ * <p>
+ * WALA's class hierarchy cannot be serialized, so the snapshot cannot replace building it.
+ * Instead, it lets a {@link TypeRepository.Builder#lazyHierarchy(boolean) lazy hierarchy} find the reachable runtime classes
+ * without reading a single runtime class file, so that WALA only ever loads the runtime classes the plugin needs.
+ * The snapshot is created from the class files themselves, and keyed by the content hash of the runtime jars.
+ */
+public class RuntimeSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuntimeSnapshot.class);
+
+    private static final int MAGIC = 0x47504152;
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".snapshot";
+
+    private final String key;
+    private final ImmutableMap<String, ImmutableList<String>> supertypes;
+
+    private RuntimeSnapshot(String key, ImmutableMap<String, ImmutableList<String>> supertypes) {
+        this.key = key;
+        this.supertypes = supertypes;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The direct supertypes of each runtime class, the superclass followed by the directly implemented interfaces,
+     * keyed by class name, e.g. {@code org/gradle/api/Task}.
+     */
+    public ImmutableMap<String, ImmutableList<String>> getSupertypes() {
+        return supertypes;
+    }
+
+    /**
+     * Returns the direct supertypes of the class, or {@code null} if it is not part of the runtime.
+     */
+    @Nullable
+    public ImmutableList<String> findSupertypes(String className) {
+        return supertypes.get(className);
+    }
+
+    public static String key(Collection<Path> runtime) throws IOException {
+        return ContentHashes.hash(runtime).toString();
+    }
+
+    /**
+     * Loads the snapshot for the given runtime from the directory, or creates and stores it if it does not exist yet.
+     */
+    public static RuntimeSnapshot loadOrCreate(Path directory, Collection<Path> runtime) throws IOException {
+        return loadOrCreate(directory, key(runtime), runtime);
+    }
+
+    static RuntimeSnapshot loadOrCreate(Path directory, String key, Collection<Path> runtime) throws IOException {
+        Path file = directory.resolve(key + EXTENSION);
+        if (Files.isRegularFile(file)) {
+            try {
+                return read(file, key);
+            } catch (IOException e) {
+                LOGGER.warn("Could not read runtime snapshot {}, recreating it", file, e);
+            }
+        }
+        RuntimeSnapshot snapshot = create(key, runtime);
+        snapshot.write(directory);
+        return snapshot;
+    }
+
+    /**
+     * Reads the class headers of the runtime, the first class with a name wins like when WALA loads the classes.
+     */
+    public static RuntimeSnapshot create(String key, Collection<Path> runtime) throws IOException {
+        var supertypes = new LinkedHashMap<String, ImmutableList<String>>();
+        for (Path path : runtime) {
+            ClassFiles.visit(path, (typeName, content) -> {
+                String className = typeName.substring(1);
+                if (supertypes.containsKey(className)) {
+                    return;
+                }
+                ConstantPool pool = ConstantPool.read(content.read());
+                supertypes.put(className, Stream.concat(Stream.ofNullable(pool.getSuperName()), pool.getInterfaceNames().stream())
+                    .collect(ImmutableList.toImmutableList()));
+            });
+        }
+        return new RuntimeSnapshot(key, ImmutableMap.copyOf(supertypes));
+    }
+
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(key + EXTENSION);
+        // Multiple workers may be creating the same snapshot at the same time
+        Path temporaryFile = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporaryFile))))) {
+                writeTo(output);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void writeTo(DataOutputStream output) throws IOException {
+        // Class names are stored once, and referenced by index
+        var names = new LinkedHashMap<String, Integer>();
+        supertypes.forEach((className, classSupertypes) -> {
+            names.putIfAbsent(className, names.size());
+            classSupertypes.forEach(superType -> names.putIfAbsent(superType, names.size()));
+        });
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(key);
+        output.writeInt(names.size());
+        for (String name : names.keySet()) {
+            output.writeUTF(name);
+        }
+        output.writeInt(supertypes.size());
+        for (Map.Entry<String, ImmutableList<String>> entry : supertypes.entrySet()) {
+            output.writeInt(names.get(entry.getKey()));
+            output.writeShort(entry.getValue().size());
+            for (String superType : entry.getValue()) {
+                output.writeInt(names.get(superType));
+            }
+        }
+    }
+
+    public static RuntimeSnapshot read(Path file, String expectedKey) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unsupported runtime snapshot format: " + file);
+            }
+            String key = input.readUTF();
+            if (!key.equals(expectedKey)) {
+                throw new IOException("Runtime snapshot " + file + " has unexpected key " + key);
+            }
+            int nameCount = input.readInt();
+            List<String> names = new ArrayList<>(nameCount);
+            for (int i = 0; i < nameCount; i++) {
+                names.add(input.readUTF());
+            }
+            int classCount = input.readInt();
+            var supertypes = ImmutableMap.<String, ImmutableList<String>>builderWithExpectedSize(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String className = names.get(input.readInt());
+                int superTypeCount = input.readUnsignedShort();
+                var classSupertypes = ImmutableList.<String>builderWithExpectedSize(superTypeCount);
+                for (int j = 0; j < superTypeCount; j++) {
+                    classSupertypes.add(names.get(input.readInt()));
+                }
+                supertypes.put(className, classSupertypes.build());
+            }
+            return new RuntimeSnapshot(key, supertypes.build());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RuntimeSnapshot " + key + " (" + supertypes.size() + " classes)";
+    }
+}
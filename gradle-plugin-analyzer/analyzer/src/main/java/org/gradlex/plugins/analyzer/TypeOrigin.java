@@ -1,17 +1,17 @@
 package org.gradlex.plugins.analyzer;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.core.util.strings.Atom;
 import com.ibm.wala.types.TypeName;
 import com.ibm.wala.types.TypeReference;
 
-import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 public enum TypeOrigin {
@@ -20,96 +20,128 @@ public enum TypeOrigin {
     RUNTIME(false),
     EXTERNAL(false);
 
-    private static final PackageMatcher PUBLIC_MATCHER = new CompositePackageMatcher(
-        exact("org/gradle"),
-        prefix("org/gradle/api"),
-        prefix("org/gradle/authentication"),
-        prefix("org/gradle/build"),
-        prefix("org/gradle/buildinit"),
-        prefix("org/gradle/caching"),
-        prefix("org/gradle/concurrent"),
-        prefix("org/gradle/deployment"),
-        prefix("org/gradle/env"),
-        prefix("org/gradle/external/javadoc"),
-        prefix("org/gradle/ide"),
-        prefix("org/gradle/includedbuild"),
-        prefix("org/gradle/ivy"),
-        prefix("org/gradle/jvm"),
-        prefix("org/gradle/language"),
-        prefix("org/gradle/maven"),
-        prefix("org/gradle/nativeplatform"),
-        prefix("org/gradle/normalization"),
-        prefix("org/gradle/platform"),
-        prefix("org/gradle/play"),
-        prefix("org/gradle/plugin/devel"),
-        exact("org/gradle/plugin/repository"),
-        exact("org/gradle/plugin/use"),
-        exact("org/gradle/plugin/management"),
-        prefix("org/gradle/plugins"),
-        prefix("org/gradle/process"),
-        prefix("org/gradle/testfixtures"),
-        prefix("org/gradle/testing/jacoco"),
-        prefix("org/gradle/tooling"),
-        prefix("org/gradle/swiftpm"),
-        prefix("org/gradle/model"),
-        prefix("org/gradle/testkit"),
-        prefix("org/gradle/testing"),
-        prefix("org/gradle/vcs"),
-        prefix("org/gradle/work"),
-        prefix("org/gradle/workers"),
-        prefix("org/gradle/util")
-    );
+    private static final PackageNode ROOT = new PackageNode();
+
+    static {
+        // Roots are matched by prefix, e.g. "java" also covers "javafx", and "org/gradle" covers "org/gradlex"
+        root("org/gradle", INTERNAL);
+        root("net/rubygrapefruit", INTERNAL);
+        root("java", RUNTIME);
+        root("javax", RUNTIME);
+        root("jdk", RUNTIME);
+        root("groovy", RUNTIME);
+        root("org/codehaus/groovy", RUNTIME);
+        root("kotlin", RUNTIME);
+        // This is to avoid detecting references in org.slf4j.impl.StaticLoggerBinder as internal API
+        root("org/slf4j", RUNTIME);
+
+        exact("org/gradle");
+        prefix("org/gradle/api");
+        prefix("org/gradle/authentication");
+        prefix("org/gradle/build");
+        prefix("org/gradle/buildinit");
+        prefix("org/gradle/caching");
+        prefix("org/gradle/concurrent");
+        prefix("org/gradle/deployment");
+        prefix("org/gradle/env");
+        prefix("org/gradle/external/javadoc");
+        prefix("org/gradle/ide");
+        prefix("org/gradle/includedbuild");
+        prefix("org/gradle/ivy");
+        prefix("org/gradle/jvm");
+        prefix("org/gradle/language");
+        prefix("org/gradle/maven");
+        prefix("org/gradle/nativeplatform");
+        prefix("org/gradle/normalization");
+        prefix("org/gradle/platform");
+        prefix("org/gradle/play");
+        prefix("org/gradle/plugin/devel");
+        exact("org/gradle/plugin/repository");
+        exact("org/gradle/plugin/use");
+        exact("org/gradle/plugin/management");
+        prefix("org/gradle/plugins");
+        prefix("org/gradle/process");
+        prefix("org/gradle/testfixtures");
+        prefix("org/gradle/testing/jacoco");
+        prefix("org/gradle/tooling");
+        prefix("org/gradle/swiftpm");
+        prefix("org/gradle/model");
+        prefix("org/gradle/testkit");
+        prefix("org/gradle/testing");
+        prefix("org/gradle/vcs");
+        prefix("org/gradle/work");
+        prefix("org/gradle/workers");
+        prefix("org/gradle/util");
+    }
+
+    private static final Atom INTERNAL_SEGMENT = Atom.findOrCreateAsciiAtom("internal");
+
+    /**
+     * Long-lived workers see the packages of many plugins, so the memo starts over instead of growing forever.
+     */
+    private static final int MAX_MEMOIZED_PACKAGES = 16_384;
+    private static final Map<Atom, TypeOrigin> PACKAGE_ORIGINS = new ConcurrentHashMap<>();
 
     private final boolean gradleApi;
 
-    private static final List<Atom> GRADLE_ROOTS = atoms(
-        "org/gradle",
-        "net/rubygrapefruit"
-    );
-    private static final List<Atom> RUNTIME_ROOTS = atoms(
-        "java", "javax", "jdk",
-        "groovy", "org/codehaus/groovy",
-        "kotlin",
-        // This is to avoid detecting references in org.slf4j.impl.StaticLoggerBinder as internal API
-        "org/slf4j"
-    );
-
-    private static List<Atom> atoms(String... names) {
-        return Stream.of(names)
-            .map(Atom::findOrCreateAsciiAtom)
-            .collect(ImmutableList.toImmutableList());
+    public static TypeOrigin of(TypeName type) {
+        if (type.isArrayType()) {
+            type = type.getInnermostElementType();
+        }
+        if (type.isPrimitiveType()) {
+            return RUNTIME;
+        }
+        Atom pkg = type.getPackage();
+        if (pkg == null) {
+            return EXTERNAL;
+        }
+        TypeOrigin origin = PACKAGE_ORIGINS.get(pkg);
+        if (origin == null) {
+            origin = classify(pkg);
+            memoize(pkg, origin);
+        }
+        return origin;
     }
 
-    private static final LoadingCache<TypeName, TypeOrigin> CACHE = CacheBuilder.newBuilder()
-        .build(new CacheLoader<>() {
-            @Nonnull
-            @Override
-            public TypeOrigin load(TypeName type) {
-                if (type.isArrayType()) {
-                    type = type.getInnermostElementType();
-                }
-                if (type.isPrimitiveType()) {
-                    return RUNTIME;
+    private static void memoize(Atom pkg, TypeOrigin origin) {
+        if (PACKAGE_ORIGINS.size() >= MAX_MEMOIZED_PACKAGES) {
+            PACKAGE_ORIGINS.clear();
+        }
+        PACKAGE_ORIGINS.put(pkg, origin);
+    }
+
+    /**
+     * Walks the segments of the package down the trie once.
+     */
+    private static TypeOrigin classify(Atom pkg) {
+        TypeOrigin origin = EXTERNAL;
+        PackageNode node = ROOT;
+        for (String name : pkg.toString().split("/")) {
+            Atom segment = Atom.findOrCreateUnicodeAtom(name);
+            if (origin == PUBLIC && segment == INTERNAL_SEGMENT) {
+                return INTERNAL;
+            }
+            if (node == null) {
+                // Below the trie only an internal segment can change the origin
+                continue;
+            }
+            PackageNode child = node.children.get(segment);
+            if (child == null) {
+                TypeOrigin rootOrigin = node.findRootPrefix(segment);
+                if (rootOrigin != null) {
+                    return rootOrigin;
                 }
-                Atom pkg = type.getPackage();
-                if (pkg == null) {
-                    return EXTERNAL;
-                } else if (GRADLE_ROOTS.stream().anyMatch(pkg::startsWith)) {
-                    return PUBLIC_MATCHER.match(pkg) ? PUBLIC : INTERNAL;
-                } else if (RUNTIME_ROOTS.stream().anyMatch(pkg::startsWith)) {
-                    return RUNTIME;
-                } else {
-                    return EXTERNAL;
+                if (origin != PUBLIC) {
+                    return origin;
                 }
+            } else if (child.subpackages != null) {
+                origin = child.subpackages;
             }
-        });
-
-    private static boolean matches(Pattern pattern, String packageName) {
-        return pattern.matcher(packageName).matches();
-    }
-
-    public static TypeOrigin of(TypeName type) {
-        return CACHE.getUnchecked(type);
+            node = child;
+        }
+        return node != null && node.pkg != null
+            ? node.pkg
+            : origin;
     }
 
     public static TypeOrigin of(TypeReference reference) {
@@ -144,59 +176,68 @@ public enum TypeOrigin {
         return true;
     }
 
-    private interface PackageMatcher {
-        boolean match(Atom pkg);
+    private static void root(String name, TypeOrigin origin) {
+        List<Atom> segments = segments(name);
+        PackageNode parent = ROOT.getOrCreate(segments.subList(0, segments.size() - 1));
+        Atom last = segments.get(segments.size() - 1);
+        parent.rootPrefixes.put(last, origin);
+        PackageNode node = parent.getOrCreate(List.of(last));
+        node.pkg = origin;
+        node.subpackages = origin;
     }
 
-    private static PackageMatcher exact(String name) {
-        return new ExactPackageMatcher(name);
+    /**
+     * The package itself is public API.
+     */
+    private static void exact(String name) {
+        ROOT.getOrCreate(segments(name)).pkg = PUBLIC;
     }
 
-    private static PackageMatcher prefix(String name) {
-        return new PrefixPackageMatcher(name);
+    /**
+     * The package and its subpackages are public API, except for internal packages.
+     */
+    private static void prefix(String name) {
+        PackageNode node = ROOT.getOrCreate(segments(name));
+        node.pkg = PUBLIC;
+        node.subpackages = PUBLIC;
     }
 
-    private static class ExactPackageMatcher implements PackageMatcher {
-        private final Atom name;
-
-        public ExactPackageMatcher(String name) {
-            this.name = Atom.findOrCreateAsciiAtom(name);
-        }
-
-        @Override
-        public boolean match(Atom pkg) {
-            return pkg == name;
-        }
-    }
-
-    private static class PrefixPackageMatcher extends ExactPackageMatcher {
-        private final Atom prefix;
-
-        public PrefixPackageMatcher(String name) {
-            super(name);
-            this.prefix = Atom.findOrCreateAsciiAtom(name + "/");
-        }
-
-        @Override
-        public boolean match(Atom pkg) {
-            return super.match(pkg) || (pkg.startsWith(prefix) && !internal(pkg.toString()));
-        }
-
-        private boolean internal(String pkg) {
-            return pkg.endsWith("/internal") || pkg.contains("/internal/");
-        }
+    private static List<Atom> segments(String name) {
+        return Stream.of(name.split("/"))
+            .map(Atom::findOrCreateAsciiAtom)
+            .collect(ImmutableList.toImmutableList());
     }
 
-    private static class CompositePackageMatcher implements PackageMatcher {
-        private final List<PackageMatcher> matchers;
-
-        public CompositePackageMatcher(PackageMatcher... matchers) {
-            this.matchers = ImmutableList.copyOf(matchers);
+    /**
+     * A package segment in the trie. Only modified while the enum is initialized.
+     */
+    private static class PackageNode {
+        private final Map<Atom, PackageNode> children = new HashMap<>();
+        // Roots matching the next segment by prefix
+        private final Map<Atom, TypeOrigin> rootPrefixes = new LinkedHashMap<>();
+        // The origin of the package itself, inherited from the parents when null
+        @Nullable
+        private TypeOrigin pkg;
+        // The origin of subpackages not in the trie, inherited from the parents when null
+        @Nullable
+        private TypeOrigin subpackages;
+
+        private PackageNode getOrCreate(List<Atom> path) {
+            PackageNode node = this;
+            for (Atom segment : path) {
+                node = node.children.computeIfAbsent(segment, __ -> new PackageNode());
+            }
+            return node;
         }
 
-        @Override
-        public boolean match(Atom pkg) {
-            return matchers.stream().anyMatch(matcher -> matcher.match(pkg));
+        @Nullable
+        private TypeOrigin findRootPrefix(Atom segment) {
+            for (Map.Entry<Atom, TypeOrigin> entry : rootPrefixes.entrySet()) {
+                if (segment.startsWith(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+            return null;
         }
     }
 }
@@ -38,7 +38,6 @@ import com.ibm.wala.shrike.shrikeCT.AnnotationsReader.AnnotationAttribute;
 import com.ibm.wala.shrike.shrikeCT.AnnotationsReader.ArrayElementValue;
 import com.ibm.wala.shrike.shrikeCT.AnnotationsReader.ConstantElementValue;
 import com.ibm.wala.shrike.shrikeCT.AnnotationsReader.EnumElementValue;
-import com.ibm.wala.shrike.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.types.annotations.Annotation;
 import org.gradlex.plugins.analyzer.Reference.FieldDeclarationSource;
@@ -67,10 +66,36 @@ public class TypeReferenceWalker {
     }
 
     public static void walkReferences(IClass type, TypeResolver typeResolver, Function<IClass, VisitDecision> hierarchyFilter, Consumer<Reference> handler) {
+        walkInheritedReferences(type, typeResolver, hierarchyFilter, handler);
+        walkDeclaredReferences(type, typeResolver, handler);
+    }
+
+    /**
+     * Walks the references from the type and its methods to the supertypes selected by the hierarchy filter.
+     */
+    public static void walkInheritedReferences(IClass type, TypeResolver typeResolver, Function<IClass, VisitDecision> hierarchyFilter, Consumer<Reference> handler) {
         ReferenceVisitorFactory visitorFactory = new ReferenceVisitorFactory(typeResolver, handler);
         ReferenceVisitor hierarchyVisitor = visitorFactory.forTypeHierarchy(type);
         WalaUtil.visitSupertypes(type, hierarchyFilter, hierarchyVisitor::visitType);
 
+        type.getDeclaredMethods()
+            .forEach(method -> visitMethodInheritance(method, hierarchyFilter, visitorFactory));
+    }
+
+    /**
+     * Walks the references from annotations, field and method declarations and method bodies of the type.
+     * <p>
+     * Unlike inherited references these do not depend on the hierarchy filter,
+     * so they can be shared between analyses using different filters.
+     */
+    public static void walkDeclaredReferences(IClass type, TypeResolver typeResolver, Consumer<Reference> handler) {
+        walkDeclaredReferences(type, new ReferenceVisitorFactory(typeResolver, handler));
+    }
+
+    /**
+     * Walks the declared references of the type with visitors created by the given factory.
+     */
+    public static void walkDeclaredReferences(IClass type, ReferenceVisitorFactory visitorFactory) {
         visitAnnotations(type.getAnnotations(), visitorFactory.forTypeAnnotations(type));
 
         Stream.concat(
@@ -84,7 +109,7 @@ public class TypeReferenceWalker {
         Stream.concat(
                 Stream.ofNullable(type.getClassInitializer()),
                 type.getDeclaredMethods().stream())
-            .forEach(method -> visitMethod(method, hierarchyFilter, visitorFactory));
+            .forEach(method -> visitMethod(method, visitorFactory));
     }
 
     private static void visitAnnotations(@Nullable Collection<Annotation> annotations, ReferenceVisitor visitor) {
@@ -122,7 +147,7 @@ public class TypeReferenceWalker {
         });
     }
 
-    private static void visitMethod(IMethod method, Function<IClass, VisitDecision> hierarchyFilter, ReferenceVisitorFactory visitorFactory) {
+    private static void visitMethod(IMethod method, ReferenceVisitorFactory visitorFactory) {
         visitAnnotations(method.getAnnotations(), visitorFactory.forMethodAnnotations(method));
 
         ReferenceVisitor declarationVisitor = visitorFactory.forMethodDeclaration(method);
@@ -132,28 +157,26 @@ public class TypeReferenceWalker {
         }
         getDeclaredExceptions(method).forEach(declarationVisitor::visitType);
 
+        ReferenceVisitor bodyVisitor = visitorFactory.forMethodBody(method);
+        Arrays.stream(visitorFactory.getTypeResolver().getInstructions(method))
+            .forEach(instruction -> visitReferencedTypes(instruction, bodyVisitor));
+    }
+
+    private static void visitMethodInheritance(IMethod method, Function<IClass, VisitDecision> hierarchyFilter, ReferenceVisitorFactory visitorFactory) {
         // Do not report inherited constructors as we already report extending internal types
         if (!method.isInit() && !method.isClinit()) {
             ReferenceVisitor inheritanceVisitor = visitorFactory.forMethodInheritance(method);
             WalaUtil.visitSupertypes(method.getDeclaringClass(), hierarchyFilter, superType -> {
-                IMethod implementedMethod = superType.getMethod(method.getSelector());
+                IMethod implementedMethod = WalaUtil.findMethod(superType, method.getSelector());
                 if (implementedMethod != null) {
                     inheritanceVisitor.visitMethod(implementedMethod);
                 }
             });
         }
-
-        ReferenceVisitor bodyVisitor = visitorFactory.forMethodBody(method);
-        Arrays.stream(WalaUtil.instructions(method))
-            .forEach(instruction -> visitReferencedTypes(instruction, bodyVisitor));
     }
 
     private static Stream<TypeReference> getDeclaredExceptions(IMethod method) {
-        try {
-            return Stream.ofNullable(method.getDeclaredExceptions()).flatMap(Arrays::stream);
-        } catch (InvalidClassFileException e) {
-            throw new RuntimeException(e);
-        }
+        return Stream.ofNullable(WalaUtil.declaredExceptions(method)).flatMap(Arrays::stream);
     }
 
     private static void visitReferencedTypes(IInstruction instruction, ReferenceVisitor visitor) {
@@ -315,39 +338,47 @@ public class TypeReferenceWalker {
             this.handler = handler;
         }
 
+        protected ReferenceVisitor createVisitor(Source source) {
+            return new ReferenceVisitor(source, typeResolver, handler);
+        }
+
+        public TypeResolver getTypeResolver() {
+            return typeResolver;
+        }
+
         public ReferenceVisitor forTypeHierarchy(IClass type) {
-            return new ReferenceVisitor(new TypeInheritanceSource(type), typeResolver, handler);
+            return createVisitor(new TypeInheritanceSource(type));
         }
 
         public ReferenceVisitor forTypeAnnotations(IClass type) {
             // TODO Merge this with forTypeHierarchy()
-            return new ReferenceVisitor(new TypeDeclarationSource(type), typeResolver, handler);
+            return createVisitor(new TypeDeclarationSource(type));
         }
 
         public ReferenceVisitor forFieldDeclaration(IField field) {
-            return new ReferenceVisitor(new FieldDeclarationSource(field), typeResolver, handler);
+            return createVisitor(new FieldDeclarationSource(field));
         }
 
         public ReferenceVisitor forFieldAnnotations(IField field) {
             // TODO Merge this with forFieldDeclaration()
-            return new ReferenceVisitor(new FieldDeclarationSource(field), typeResolver, handler);
+            return createVisitor(new FieldDeclarationSource(field));
         }
 
         public ReferenceVisitor forMethodDeclaration(IMethod method) {
-            return new ReferenceVisitor(new MethodDeclarationSource(method), typeResolver, handler);
+            return createVisitor(new MethodDeclarationSource(method));
         }
 
         public ReferenceVisitor forMethodInheritance(IMethod method) {
-            return new ReferenceVisitor(new MethodInheritanceSource(method), typeResolver, handler);
+            return createVisitor(new MethodInheritanceSource(method));
         }
 
         public ReferenceVisitor forMethodBody(IMethod method) {
-            return new ReferenceVisitor(new MethodBodySource(method), typeResolver, handler);
+            return createVisitor(new MethodBodySource(method));
         }
 
         public ReferenceVisitor forMethodAnnotations(IMethod method) {
             // TODO Merge this with forMethodDeclaration()
-            return new ReferenceVisitor(new MethodDeclarationSource(method), typeResolver, handler);
+            return createVisitor(new MethodDeclarationSource(method));
         }
     }
 
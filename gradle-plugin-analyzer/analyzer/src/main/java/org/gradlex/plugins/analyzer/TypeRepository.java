@@ -1,9 +1,13 @@
 package org.gradlex.plugins.analyzer;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.ibm.wala.classLoader.BinaryDirectoryTreeModule;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.core.util.config.AnalysisScopeReader;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
@@ -15,28 +19,33 @@ import com.ibm.wala.util.config.FileOfClasses;
 import org.gradlex.plugins.analyzer.Reference.MethodTarget;
 import org.gradlex.plugins.analyzer.Reference.Target;
 import org.gradlex.plugins.analyzer.Reference.TypeTarget;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitorFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarFile;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import static org.gradlex.plugins.analyzer.TypeOrigin.EXTERNAL;
 import static org.gradlex.plugins.analyzer.TypeReferenceWalker.VisitDecision.STOP_DONT_VISIT;
 import static org.gradlex.plugins.analyzer.TypeReferenceWalker.VisitDecision.VISIT_AND_CONTINUE;
 
-public class TypeRepository {
+public class TypeRepository implements Closeable {
 
     private static final String EXCLUSIONS = """
         java\\/awt\\/.*
@@ -53,149 +62,585 @@ public class TypeRepository {
         java\\/security\\/.*
         """;
 
+    private final RuntimeLayer runtimeLayer;
+    private final boolean sharedRuntimeLayer;
+    private final ImmutableList<Path> classpath;
+    // The modules that are not shared with other repositories, closed with the repository
+    private final ImmutableList<Module> ownedModules;
     private final ClassHierarchy hierarchy;
-    private final Map<TypeSet, ImmutableList<IClass>> cache = new HashMap<>();
+    private final Map<TypeSet, BitSet> typeSetIds = new EnumMap<>(TypeSet.class);
+    private final Map<TypeSet, ImmutableList<IClass>> cache = new EnumMap<>(TypeSet.class);
+    private final TypeTable typeTable;
+    private final InstructionCache instructionCache;
     private final TypeResolverImpl typeResolver;
+    @Nullable
+    private final ReferenceIndex referenceIndex;
+    // Reclaimed when memory gets tight, the references can be walked again
+    private final Cache<IClass, DeclaredReferences> declaredReferences = CacheBuilder.newBuilder()
+        .softValues()
+        .build();
+    private final int closureParallelism;
+    @Nullable
+    private ClosureCache closureCache;
+    // The time spent loading type sets so far, guarded by the repository like the type sets
+    private long typeSetNanos;
+    private final PerformanceMetrics metrics = new PerformanceMetrics();
+    private final LongAdder referencesWalked = metrics.counter(PerformanceMetrics.REFERENCES_WALKED);
 
     public TypeRepository(Collection<Path> classpath) throws IOException, ClassHierarchyException {
-        this.hierarchy = ClassHierarchyFactory.make(createScope(classpath));
-        this.typeResolver = new TypeResolverImpl(hierarchy);
+        this(RuntimeLayer.create(ImmutableList.of(), null), false, classpath, null, InstructionCache.DEFAULT_MAXIMUM_INSTRUCTIONS, 1, false);
+    }
+
+    private TypeRepository(RuntimeLayer runtimeLayer, boolean sharedRuntimeLayer, Collection<Path> classpath, @Nullable Path referenceIndexDirectory, long instructionCacheSize, int closureParallelism, boolean lazyHierarchy) throws IOException, ClassHierarchyException {
+        if (closureParallelism < 1) {
+            throw new IllegalArgumentException("Closure parallelism must be at least 1, but was " + closureParallelism);
+        }
+        var creation = new AnalyzerEvents.TypeRepositoryCreation();
+        creation.begin();
+        this.runtimeLayer = runtimeLayer;
+        this.closureParallelism = closureParallelism;
+        this.classpath = ImmutableList.copyOf(classpath);
+        var hierarchyBuild = new AnalyzerEvents.ClassHierarchyBuild();
+        hierarchyBuild.begin();
+        long hierarchyStart = System.nanoTime();
+        List<Module> classpathModules = this.classpath.stream()
+            .map(TypeRepository::createModule)
+            .toList();
+        this.sharedRuntimeLayer = sharedRuntimeLayer;
+        this.ownedModules = sharedRuntimeLayer
+            ? ImmutableList.copyOf(classpathModules)
+            : ImmutableList.<Module>builder().addAll(runtimeLayer.getModules()).addAll(classpathModules).build();
+        this.hierarchy = ClassHierarchyFactory.make(createScope(runtimeLayer, classpathModules, lazyHierarchy));
+        metrics.recordPhase(PerformanceMetrics.HIERARCHY, hierarchyStart);
+        hierarchyBuild.classes = hierarchy.getNumberOfClasses();
+        hierarchyBuild.commit();
+        long typeTableStart = System.nanoTime();
+        this.typeTable = new TypeTable(hierarchy);
+        metrics.recordPhase(PerformanceMetrics.TYPE_TABLE, typeTableStart);
+        metrics.setCounter(PerformanceMetrics.CLASSES_IN_SCOPE, typeTable.size());
+        this.instructionCache = new InstructionCache(instructionCacheSize);
+        this.typeResolver = new TypeResolverImpl(hierarchy, typeTable, instructionCache);
+        this.referenceIndex = referenceIndexDirectory == null
+            ? null
+            : new ReferenceIndex(referenceIndexDirectory, this.classpath, classpathModules, hierarchy, typeResolver);
+        creation.classpathEntries = this.classpath.size();
+        creation.classes = typeTable.size();
+        creation.lazyHierarchy = lazyHierarchy;
+        creation.commit();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final List<Path> runtime = new ArrayList<>();
+        private final List<Path> classpath = new ArrayList<>();
+        @Nullable
+        private Path snapshotDirectory;
+        @Nullable
+        private RuntimeLayer runtimeLayer;
+        @Nullable
+        private Path referenceIndexDirectory;
+        private long instructionCacheSize = InstructionCache.DEFAULT_MAXIMUM_INSTRUCTIONS;
+        private int closureParallelism = 1;
+        private boolean lazyHierarchy;
+
+        private Builder() {
+        }
+
+        /**
+         * The Gradle runtime the analyzed classes are compiled against, e.g. the Gradle API jar, Groovy and Kotlin.
+         */
+        public Builder runtime(Collection<Path> paths) {
+            runtime.addAll(paths);
+            return this;
+        }
+
+        /**
+         * Use a runtime layer shared with other repositories instead of {@link #runtime(Collection)}.
+         */
+        public Builder runtimeLayer(RuntimeLayer layer) {
+            this.runtimeLayer = layer;
+            return this;
+        }
+
+        /**
+         * The classes to analyze and their dependencies.
+         */
+        public Builder classpath(Collection<Path> paths) {
+            classpath.addAll(paths);
+            return this;
+        }
+
+        /**
+         * Store a {@link RuntimeSnapshot} of the runtime in the given directory, and reuse it on later runs.
+         * The snapshot is only used by a {@link #lazyHierarchy(boolean) lazy hierarchy}.
+         */
+        public Builder snapshotDirectory(@Nullable Path directory) {
+            this.snapshotDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Store a {@link ReferenceIndex} of the classpath in the given directory, and reuse it on later runs.
+         */
+        public Builder referenceIndexDirectory(@Nullable Path directory) {
+            this.referenceIndexDirectory = directory;
+            return this;
+        }
+
+        /**
+         * The maximum number of decoded instructions to keep in the {@link InstructionCache}, 0 disables caching.
+         */
+        public Builder instructionCacheSize(long instructions) {
+            this.instructionCacheSize = instructions;
+            return this;
+        }
+
+        /**
+         * The number of threads to walk the types of {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES} on;
+         * types are walked on the calling thread when 1.
+         */
+        public Builder closureParallelism(int parallelism) {
+            this.closureParallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Only load the runtime classes reachable from the classpath, see {@link ReachableClasses}.
+         * This makes the repository quicker to create and smaller, though type sets then only contain
+         * the runtime classes reachable from the classpath. With a {@link RuntimeSnapshot}, no runtime class file is read
+         * other than those WALA loads.
+         */
+        public Builder lazyHierarchy(boolean lazy) {
+            this.lazyHierarchy = lazy;
+            return this;
+        }
+
+        public TypeRepository build() throws IOException, ClassHierarchyException {
+            if (runtimeLayer != null) {
+                if (!runtime.isEmpty() || snapshotDirectory != null) {
+                    throw new IllegalStateException("The runtime and the snapshot directory are defined by the runtime layer");
+                }
+                // The repository releases the layer when closed
+                runtimeLayer.acquire();
+                try {
+                    return new TypeRepository(runtimeLayer, true, classpath, referenceIndexDirectory, instructionCacheSize, closureParallelism, lazyHierarchy);
+                } catch (IOException | ClassHierarchyException | RuntimeException e) {
+                    runtimeLayer.release();
+                    throw e;
+                }
+            }
+            return new TypeRepository(RuntimeLayer.create(runtime, snapshotDirectory), false, classpath, referenceIndexDirectory, instructionCacheSize, closureParallelism, lazyHierarchy);
+        }
     }
 
     @Nonnull
-    private static AnalysisScope createScope(Collection<Path> classpath) throws IOException {
+    private static AnalysisScope createScope(RuntimeLayer runtimeLayer, List<Module> classpathModules, boolean lazyHierarchy) throws IOException {
         AnalysisScope scope = AnalysisScopeReader.instance.makePrimordialScope(null);
-        classpath.forEach(path -> addToScope(scope, path));
+        ClassLoaderReference loader = scope.getLoader(AnalysisScope.APPLICATION);
+        List<Module> runtimeModules = runtimeLayer.getModules();
+        if (lazyHierarchy) {
+            RuntimeSnapshot snapshot = runtimeLayer.findSnapshot();
+            Set<String> reachableClasses = snapshot == null
+                ? ReachableClasses.find(runtimeModules, classpathModules)
+                : ReachableClasses.find(snapshot, classpathModules);
+            runtimeModules = runtimeModules.stream()
+                .map(module -> ReachableClasses.filter(module, reachableClasses))
+                .toList();
+        }
+        runtimeModules.forEach(module -> scope.addToScope(loader, module));
+        classpathModules.forEach(module -> scope.addToScope(loader, module));
         scope.setExclusions(new FileOfClasses(new ByteArrayInputStream(EXCLUSIONS.getBytes(StandardCharsets.UTF_8))));
         return scope;
     }
 
-    private static void addToScope(AnalysisScope scope, Path path) {
-        ClassLoaderReference loader = scope.getLoader(AnalysisScope.APPLICATION);
+    /**
+     * Jars are memory-mapped, class directories are read file by file.
+     */
+    static Module createModule(Path path) {
         if (Files.isRegularFile(path)) {
             try {
-                JarFile jar = new JarFile(path.toFile(), false);
-                scope.addToScope(loader, jar);
+                return MappedJarModule.open(path);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         } else {
-            scope.addToScope(loader, new BinaryDirectoryTreeModule(path.toFile()));
+            return new BinaryDirectoryTreeModule(path.toFile());
         }
     }
 
+    public RuntimeLayer getRuntimeLayer() {
+        return runtimeLayer;
+    }
+
+    public ImmutableList<Path> getClasspath() {
+        return classpath;
+    }
+
+    public TypeTable getTypeTable() {
+        return typeTable;
+    }
+
+    public InstructionCache getInstructionCache() {
+        return instructionCache;
+    }
+
     public TypeResolverImpl getTypeResolver() {
         return typeResolver;
     }
 
-    public ImmutableList<IClass> getTypeSet(TypeSet set) {
+    /**
+     * The phases and counters recorded so far by the repository and the analyzers using it.
+     */
+    public PerformanceMetrics getPerformanceMetrics() {
+        metrics.setCounter(PerformanceMetrics.INSTRUCTIONS_DECODED, instructionCache.getDecodedInstructions());
+        return metrics;
+    }
+
+    /**
+     * Walks the declared references of the type, see {@link TypeReferenceWalker#walkDeclaredReferences(IClass, TypeResolver, Consumer)}.
+     * The references are read from the reference index instead of the bytecode if the repository was configured with one.
+     */
+    public void walkDeclaredReferences(IClass type, Consumer<Reference> handler) {
+        walkDeclaredReferences(type, typeResolver, handler);
+    }
+
+    /**
+     * Walks the declared references of the type, resolving references with the given resolver.
+     */
+    public void walkDeclaredReferences(IClass type, TypeResolver resolver, Consumer<Reference> handler) {
+        walkDeclaredReferences(type, resolver, ReferenceEngine.BYTECODE, handler);
+    }
+
+    /**
+     * Walks the declared references of the type with the given engine.
+     * The reference index is only used with {@link ReferenceEngine#BYTECODE}, as it records what that engine visits.
+     */
+    public void walkDeclaredReferences(IClass type, TypeResolver resolver, ReferenceEngine engine, Consumer<Reference> handler) {
+        if (engine == ReferenceEngine.CONSTANT_POOL) {
+            ConstantPoolReferenceWalker.walkDeclaredReferences(type, new ReferenceVisitorFactory(resolver, handler));
+        } else if (referenceIndex == null) {
+            TypeReferenceWalker.walkDeclaredReferences(type, resolver, handler);
+        } else {
+            referenceIndex.walkDeclaredReferences(type, resolver, handler);
+        }
+    }
+
+    /**
+     * The declared references of a type, kept from walking the type when loading {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES}.
+     *
+     * @param dependencies the names of the types the references were resolved from.
+     */
+    record DeclaredReferences(ImmutableList<Reference> references, ImmutableSet<String> dependencies) {
+    }
+
+    /**
+     * Returns the declared references of the type if they were walked while loading the closure,
+     * so that analyses do not need to walk the type again.
+     */
+    @Nullable
+    DeclaredReferences findDeclaredReferences(IClass type) {
+        return declaredReferences.getIfPresent(type);
+    }
+
+    /**
+     * Remembers the types each type adds to {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES},
+     * so that they do not need to be walked again for types that have not changed.
+     */
+    public interface ClosureCache {
+        /**
+         * Returns the names of the types the given type added to the closure previously,
+         * or {@code null} if the type needs to be walked.
+         */
+        @Nullable
+        Collection<String> findReferencedTypes(IClass type);
+
+        /**
+         * @param dependencies the names of all types the referenced types were derived from.
+         */
+        void referencedTypesWalked(IClass type, Collection<String> referencedTypes, Collection<String> dependencies);
+    }
+
+    /**
+     * Use the given cache when loading {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES}.
+     */
+    public synchronized void useClosureCache(@Nullable ClosureCache closureCache) {
+        if (typeSetIds.containsKey(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES)) {
+            throw new IllegalStateException("The closure has already been loaded");
+        }
+        this.closureCache = closureCache;
+    }
+
+    /**
+     * Returns the types in the set, loading them on first access.
+     * Loading is serialized, so that concurrent analyses share the result.
+     */
+    public synchronized ImmutableList<IClass> getTypeSet(TypeSet set) {
         var result = cache.get(set);
         if (result == null) {
-            result = set.load(this, new TypeResolverImpl(hierarchy))
+            result = getTypeSetIds(set).stream()
+                .mapToObj(typeTable::getClass)
                 .collect(ImmutableList.toImmutableList());
             cache.put(set, result);
         }
         return result;
     }
 
+    /**
+     * Returns the ids of the types in the set in the {@link #getTypeTable() type table}, loading them on first access.
+     */
+    public synchronized BitSet getTypeSetIds(TypeSet set) {
+        return (BitSet) loadTypeSetIds(set).clone();
+    }
+
+    /**
+     * Hands the ids of the types in the set to the consumer.
+     * <p>
+     * Types of {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES} are handed over as soon as they have been walked,
+     * so that they can be analyzed while the rest of the closure is being walked.
+     * The consumer is then called from the threads walking the closure, so it must be thread-safe.
+     * Other sets, and sets that have been loaded before, are handed over once loaded on the calling thread.
+     */
+    public synchronized void streamTypeSet(TypeSet set, IntConsumer consumer) {
+        if (set == TypeSet.ALL_EXTERNAL_REFERENCED_TYPES && !typeSetIds.containsKey(set)) {
+            var event = new AnalyzerEvents.TypeSetLoad();
+            event.begin();
+            long loadedBefore = typeSetNanos;
+            long start = System.nanoTime();
+            BitSet ids = loadReferenceClosure(consumer);
+            // Includes the time the consumer was blocked handing over types
+            recordTypeSet(set, ids, start, loadedBefore, event);
+            typeSetIds.put(set, ids);
+        } else {
+            loadTypeSetIds(set).stream().forEach(consumer);
+        }
+    }
+
+    private BitSet loadTypeSetIds(TypeSet set) {
+        var result = typeSetIds.get(set);
+        if (result == null) {
+            var event = new AnalyzerEvents.TypeSetLoad();
+            event.begin();
+            long loadedBefore = typeSetNanos;
+            long start = System.nanoTime();
+            result = set.load(this, typeResolver);
+            recordTypeSet(set, result, start, loadedBefore, event);
+            typeSetIds.put(set, result);
+        }
+        return result;
+    }
+
+    /**
+     * The time excludes loading the sets the set is derived from, which is recorded for those sets,
+     * so that the times of all sets add up to the time spent loading type sets.
+     *
+     * @param loadedBefore the time spent loading type sets when the set started loading.
+     */
+    private void recordTypeSet(TypeSet set, BitSet ids, long startNanos, long loadedBefore, AnalyzerEvents.TypeSetLoad event) {
+        long nestedNanos = typeSetNanos - loadedBefore;
+        long exclusiveNanos = System.nanoTime() - startNanos - nestedNanos;
+        typeSetNanos += exclusiveNanos;
+        metrics.phase(PerformanceMetrics.TYPE_SET_PREFIX + set.name()).add(exclusiveNanos);
+        metrics.setCounter(PerformanceMetrics.TYPES_IN_SET_PREFIX + set.name(), ids.cardinality());
+        event.typeSet = set.name();
+        event.types = ids.cardinality();
+        event.commit();
+    }
+
+    private BitSet toIds(Collection<IClass> types) {
+        var ids = new BitSet(typeTable.size());
+        types.forEach(type -> {
+            int id = typeTable.getId(type);
+            if (id != TypeTable.NO_TYPE) {
+                ids.set(id);
+            }
+        });
+        return ids;
+    }
+
+    private BitSet filterByOrigin(BitSet ids, TypeOrigin origin) {
+        var result = new BitSet(typeTable.size());
+        ids.stream()
+            .filter(id -> typeTable.getOrigin(id) == origin)
+            .forEach(result::set);
+        return result;
+    }
+
+    /**
+     * Walks the external types and the external types they reference, transitively.
+     * <p>
+     * The closure is walked one level at a time. The types of a level are walked concurrently
+     * if the repository is configured with a closure parallelism above 1, then their references
+     * are merged in the order of the level, so the result does not depend on the parallelism.
+     *
+     * @param discovered called with the id of each type in the closure as soon as it has been walked, on the thread that walked it.
+     */
+    private BitSet loadReferenceClosure(IntConsumer discovered) {
+        var seenTypes = (BitSet) loadTypeSetIds(TypeSet.ALL_EXTERNAL_TYPES).clone();
+        int[] level = seenTypes.stream().toArray();
+        while (level.length > 0) {
+            int[] currentLevel = level;
+            int[][] referencedTypes = new int[currentLevel.length][];
+            ParallelTasks.forEachIndex(closureParallelism, currentLevel.length, index -> {
+                referencedTypes[index] = walkClosureType(currentLevel[index]);
+                // Hand the type over once walked, so that analyses can reuse its declared references
+                discovered.accept(currentLevel[index]);
+            });
+
+            var nextLevel = new BitSet();
+            for (int[] typeReferences : referencedTypes) {
+                for (int id : typeReferences) {
+                    if (!seenTypes.get(id)) {
+                        seenTypes.set(id);
+                        nextLevel.set(id);
+                    }
+                }
+            }
+            level = nextLevel.stream().toArray();
+        }
+        return seenTypes;
+    }
+
+    /**
+     * Returns the ids of the external types the type references.
+     */
+    private int[] walkClosureType(int typeId) {
+        IClass type = typeTable.getClass(typeId);
+        typeResolver.prepare(type);
+        Collection<String> cachedTypes = closureCache == null
+            ? null
+            : closureCache.findReferencedTypes(type);
+        var referencedTypes = new BitSet();
+        if (cachedTypes != null) {
+            cachedTypes.forEach(typeName -> {
+                int referencedType = typeResolver.findTypeId(typeName);
+                if (referencedType != TypeTable.NO_TYPE) {
+                    referencedTypes.set(referencedType);
+                }
+            });
+            return referencedTypes.stream().toArray();
+        }
+
+        var recordingResolver = new RecordingTypeResolver(typeResolver, type);
+        Consumer<Reference> handler = reference -> {
+            referencesWalked.increment();
+            Target target = reference.target();
+            switch (target) {
+                case TypeTarget it -> addIfExternal(recordingResolver.findTypeId(it.type()), typeTable, referencedTypes);
+                case MethodTarget it -> {
+                    IMethod targetMethod = it.method();
+                    IClass declaringType = targetMethod.getDeclaringClass();
+                    recordingResolver.record(declaringType);
+                    int declaringTypeId = typeTable.getId(declaringType);
+                    if (declaringTypeId != TypeTable.NO_TYPE && typeTable.getOrigin(declaringTypeId) == EXTERNAL) {
+                        referencedTypes.set(declaringTypeId);
+                        addIfExternal(recordingResolver.findTypeId(targetMethod.getReturnType()), typeTable, referencedTypes);
+                        for (int iParam = 0; iParam < targetMethod.getNumberOfParameters(); iParam++) {
+                            addIfExternal(recordingResolver.findTypeId(targetMethod.getParameterType(iParam)), typeTable, referencedTypes);
+                        }
+                    }
+                }
+            }
+        };
+        TypeReferenceWalker.walkInheritedReferences(
+            type,
+            recordingResolver,
+            superType -> TypeOrigin.isExternal(superType)
+                ? VISIT_AND_CONTINUE
+                : STOP_DONT_VISIT,
+            handler);
+        var typeDeclaredReferences = new ArrayList<Reference>();
+        walkDeclaredReferences(type, recordingResolver, reference -> {
+            typeDeclaredReferences.add(reference);
+            handler.accept(reference);
+        });
+        declaredReferences.put(type, new DeclaredReferences(
+            ImmutableList.copyOf(typeDeclaredReferences),
+            ImmutableSet.copyOf(recordingResolver.getTypeNames())));
+
+        if (closureCache != null) {
+            closureCache.referencedTypesWalked(
+                type,
+                referencedTypes.stream().mapToObj(id -> typeTable.getClass(id).getName().toString()).toList(),
+                recordingResolver.getTypeNames());
+        }
+        return referencedTypes.stream().toArray();
+    }
+
+    private static void addIfExternal(int typeId, TypeTable typeTable, BitSet referencedTypes) {
+        if (typeId != TypeTable.NO_TYPE && typeTable.getOrigin(typeId) == EXTERNAL) {
+            referencedTypes.set(typeId);
+        }
+    }
+
     public enum TypeSet {
         TASK_TYPES {
             @Override
-            Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver) {
+            BitSet load(TypeRepository cache, TypeResolver typeResolver) {
                 TypeReference taskType = typeResolver.findReference("Lorg/gradle/api/Task");
-                return cache.hierarchy.getImplementors(taskType).stream();
+                return cache.toIds(cache.hierarchy.getImplementors(taskType));
             }
         },
         PLUGIN_TYPES {
             @Override
-            Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver) {
+            BitSet load(TypeRepository cache, TypeResolver typeResolver) {
                 TypeReference pluginType = typeResolver.findReference("Lorg/gradle/api/Plugin");
-                return cache.hierarchy.getImplementors(pluginType).stream();
+                return cache.toIds(cache.hierarchy.getImplementors(pluginType));
             }
         },
         EXTERNAL_TASK_TYPES {
             @Override
-            Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver) {
-                return cache.getTypeSet(TASK_TYPES).stream()
-                    .filter(TypeOrigin::isExternal);
+            BitSet load(TypeRepository cache, TypeResolver typeResolver) {
+                return cache.filterByOrigin(cache.loadTypeSetIds(TASK_TYPES), EXTERNAL);
             }
         },
         EXTERNAL_PLUGIN_TYPES {
             @Override
-            Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver) {
-                return cache.getTypeSet(PLUGIN_TYPES).stream()
-                    .filter(TypeOrigin::isExternal);
+            BitSet load(TypeRepository cache, TypeResolver typeResolver) {
+                return cache.filterByOrigin(cache.loadTypeSetIds(PLUGIN_TYPES), EXTERNAL);
             }
         },
         ALL_EXTERNAL_TYPES {
             @Override
-            Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver) {
-                return Stream.concat(
-                    cache.getTypeSet(EXTERNAL_TASK_TYPES).stream(),
-                    cache.getTypeSet(EXTERNAL_PLUGIN_TYPES).stream()
-                );
+            BitSet load(TypeRepository cache, TypeResolver typeResolver) {
+                var result = (BitSet) cache.loadTypeSetIds(EXTERNAL_TASK_TYPES).clone();
+                result.or(cache.loadTypeSetIds(EXTERNAL_PLUGIN_TYPES));
+                return result;
             }
         },
         ALL_EXTERNAL_REFERENCED_TYPES {
             @Override
-            Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver) {
-                ImmutableList<IClass> allExternalTypes = cache.getTypeSet(ALL_EXTERNAL_TYPES);
-                var queue = new ArrayDeque<>(allExternalTypes);
-                var seenTypes = new HashSet<>(allExternalTypes);
-
-                while (true) {
-                    IClass type = queue.poll();
-                    if (type == null) {
-                        break;
-                    }
-                    TypeReferenceWalker.walkReferences(
-                        type,
-                        typeResolver,
-                        superType -> TypeOrigin.isExternal(superType)
-                            ? VISIT_AND_CONTINUE
-                            : STOP_DONT_VISIT,
-                        reference -> {
-                            Target target = reference.target();
-                            switch (target) {
-                                case TypeTarget it -> {
-                                    IClass targetType = typeResolver.findClass(it.type());
-                                    if (targetType != null && TypeOrigin.of(targetType) == EXTERNAL) {
-                                        visitTypeIfNecessary(targetType, seenTypes, queue);
-                                    }
-                                }
-                                case MethodTarget it -> {
-                                    IMethod targetMethod = it.method();
-                                    IClass declaringType = targetMethod.getDeclaringClass();
-                                    if (TypeOrigin.of(declaringType) == EXTERNAL) {
-                                        visitTypeIfNecessary(declaringType, seenTypes, queue);
-                                        visitTypeIfNecessary(targetMethod.getReturnType(), typeResolver, seenTypes, queue);
-                                        for (int iParam = 0; iParam < targetMethod.getNumberOfParameters(); iParam++) {
-                                            visitTypeIfNecessary(targetMethod.getParameterType(iParam), typeResolver, seenTypes, queue);
-                                        }
-                                    }
-                                }
-                            }
-                        });
-                }
-                return seenTypes.stream();
+            BitSet load(TypeRepository cache, TypeResolver typeResolver) {
+                return cache.loadReferenceClosure(id -> {
+                });
             }
+        };
 
-            private static void visitTypeIfNecessary(TypeReference reference, TypeResolver typeResolver, Set<IClass> seenTypes, ArrayDeque<IClass> queue) {
-                IClass type = typeResolver.findClass(reference);
-                if (type != null) {
-                    visitTypeIfNecessary(type, seenTypes, queue);
-                }
-            }
+        abstract BitSet load(TypeRepository cache, TypeResolver typeResolver);
 
-            private static void visitTypeIfNecessary(IClass type, Set<IClass> seenTypes, ArrayDeque<IClass> queue) {
-                if (TypeOrigin.isExternal(type) && seenTypes.add(type)) {
-                    queue.add(type);
+    }
+
+    /**
+     * Releases the memory-mapped jars of the classpath, and of the runtime unless it is a layer shared with other repositories.
+     * A shared layer releases its jars once it has been replaced and no repository uses it anymore.
+     * The repository, and the classes and methods it handed out, must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (sharedRuntimeLayer) {
+            runtimeLayer.release();
+        }
+        ownedModules.forEach(module -> {
+            if (module instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-        };
-
-        abstract Stream<IClass> load(TypeRepository cache, TypeResolver typeResolver);
-
+        });
     }
 
     @Override
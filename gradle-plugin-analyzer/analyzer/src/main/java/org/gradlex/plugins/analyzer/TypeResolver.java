@@ -2,6 +2,7 @@ package org.gradlex.plugins.analyzer;
 
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.shrike.shrikeBT.IInstruction;
 import com.ibm.wala.types.TypeReference;
 
 import javax.annotation.Nullable;
@@ -31,4 +32,12 @@ public interface TypeResolver {
 
     @Nullable
     IMethod resolveMethod(String typeName, String methodSignature);
+
+    /**
+     * Returns the decoded instructions of the method body, empty if the method has no body.
+     * The returned array may be shared and must not be modified.
+     */
+    default IInstruction[] getInstructions(IMethod method) {
+        return WalaUtil.instructions(method);
+    }
 }
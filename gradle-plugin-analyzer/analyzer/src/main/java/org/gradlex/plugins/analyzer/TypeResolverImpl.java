@@ -1,18 +1,77 @@
 package org.gradlex.plugins.analyzer;
 
+import com.google.common.cache.CacheStats;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.shrike.shrikeBT.IInstruction;
 import com.ibm.wala.types.Selector;
 import com.ibm.wala.types.TypeName;
 import com.ibm.wala.types.TypeReference;
 
 import javax.annotation.Nullable;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
-public record TypeResolverImpl(ClassHierarchy hierarchy) implements TypeResolver {
+public class TypeResolverImpl implements TypeResolver {
+    private static final ResolvedName UNRESOLVED = new ResolvedName(null, null);
+
+    private final ClassHierarchy hierarchy;
+    private final TypeTable typeTable;
+    private final InstructionCache instructionCache;
+    // Keyed by the names as they appear in bytecode, e.g. "Lorg/gradle/api/Task;", including names of classes not in scope
+    private final Map<String, ResolvedName> resolvedNames = new ConcurrentHashMap<>();
+    private final LongAdder nameHits = new LongAdder();
+    private final LongAdder nameMisses = new LongAdder();
+    // Call sites of the same methods are resolved over and over, including methods that do not resolve
+    private final Map<MethodKey, Optional<IMethod>> resolvedMethods = new ConcurrentHashMap<>();
+    private final LongAdder methodHits = new LongAdder();
+    private final LongAdder methodMisses = new LongAdder();
+    // Types whose lazily computed WALA state has been initialized, see prepare()
+    private final Set<IClass> preparedTypes = ConcurrentHashMap.newKeySet();
+
+    private record ResolvedName(@Nullable TypeReference reference, @Nullable IClass type) {
+    }
+
+    private record MethodKey(IClass type, String signature) {
+    }
+
+    public TypeResolverImpl(ClassHierarchy hierarchy, TypeTable typeTable, InstructionCache instructionCache) {
+        this.hierarchy = hierarchy;
+        this.typeTable = typeTable;
+        this.instructionCache = instructionCache;
+    }
 
     @Override
     public TypeReference findReference(String name) {
+        return resolveName(name).reference();
+    }
+
+    private ResolvedName resolveName(String name) {
+        ResolvedName resolved = resolvedNames.get(name);
+        if (resolved != null) {
+            nameHits.increment();
+            return resolved;
+        }
+        nameMisses.increment();
+        TypeReference reference = lookUpReference(name);
+        if (reference == null) {
+            // Not cached, as the reference may be interned later, e.g. when another class referencing it is loaded
+            return UNRESOLVED;
+        }
+        resolved = new ResolvedName(reference, findClass(reference));
+        ResolvedName existing = resolvedNames.putIfAbsent(name, resolved);
+        return existing != null
+            ? existing
+            : resolved;
+    }
+
+    @Nullable
+    private TypeReference lookUpReference(String name) {
         var normalizedTypeName = normalizeTypeName(name);
         if (normalizedTypeName == null) {
             return null;
@@ -41,11 +100,7 @@ public record TypeResolverImpl(ClassHierarchy hierarchy) implements TypeResolver
 
     @Override
     public IClass findClass(String name) {
-        TypeReference reference = findReference(name);
-        if (reference == null) {
-            return null;
-        }
-        return findClass(reference);
+        return resolveName(name).type();
     }
 
     @Override
@@ -58,7 +113,24 @@ public record TypeResolverImpl(ClassHierarchy hierarchy) implements TypeResolver
             return null;
         }
 
-        return hierarchy.lookupClass(reference);
+        IClass type = hierarchy.lookupClass(reference);
+        if (type != null) {
+            prepare(type);
+        }
+        return type;
+    }
+
+    /**
+     * Prepares the type and its supertypes to be read by multiple threads, see {@link WalaUtil#prepare(IClass, java.util.function.Predicate)}.
+     * Every class handed out by the resolver is prepared, and so must be the types analyzed in parallel.
+     */
+    void prepare(IClass type) {
+        if (!preparedTypes.contains(type)) {
+            var newlyPrepared = new HashSet<IClass>();
+            WalaUtil.prepare(type, superType -> !preparedTypes.contains(superType) && newlyPrepared.add(superType));
+            // Only published once prepared
+            preparedTypes.addAll(newlyPrepared);
+        }
     }
 
     @Override
@@ -67,6 +139,68 @@ public record TypeResolverImpl(ClassHierarchy hierarchy) implements TypeResolver
         if (clazz == null) {
             return null;
         }
-        return hierarchy.resolveMethod(clazz, Selector.make(methodSignature));
+        var key = new MethodKey(clazz, methodSignature);
+        Optional<IMethod> resolved = resolvedMethods.get(key);
+        if (resolved != null) {
+            methodHits.increment();
+            return resolved.orElse(null);
+        }
+        methodMisses.increment();
+        resolved = Optional.ofNullable(WalaUtil.resolveMethod(hierarchy, clazz, Selector.make(methodSignature)));
+        Optional<IMethod> existing = resolvedMethods.putIfAbsent(key, resolved);
+        return (existing != null ? existing : resolved).orElse(null);
+    }
+
+    public TypeTable getTypeTable() {
+        return typeTable;
+    }
+
+    /**
+     * Returns the id of the class the name resolves to, or {@link TypeTable#NO_TYPE} for primitives and missing classes.
+     */
+    public int findTypeId(String name) {
+        IClass type = resolveName(name).type();
+        return type == null
+            ? TypeTable.NO_TYPE
+            : typeTable.getId(type);
+    }
+
+    /**
+     * Returns the id of the class the reference resolves to, or {@link TypeTable#NO_TYPE} for primitives and missing classes.
+     */
+    public int findTypeId(TypeReference reference) {
+        if (reference.isArrayType()) {
+            reference = reference.getInnermostElementType();
+        }
+        int id = typeTable.findId(reference.getName());
+        if (id != TypeTable.NO_TYPE) {
+            prepare(typeTable.getClass(id));
+        }
+        return id;
+    }
+
+    @Override
+    public IInstruction[] getInstructions(IMethod method) {
+        return instructionCache.getInstructions(method);
+    }
+
+    /**
+     * Hits and misses of resolving type names since the resolver was created.
+     */
+    public CacheStats getNameStats() {
+        return new CacheStats(nameHits.sum(), nameMisses.sum(), 0, 0, 0, 0);
+    }
+
+    /**
+     * Hits and misses of resolving methods since the resolver was created.
+     */
+    public CacheStats getMethodStats() {
+        return new CacheStats(methodHits.sum(), methodMisses.sum(), 0, 0, 0, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "TypeResolverImpl (" + resolvedNames.size() + " names, " + getNameStats() + ", "
+            + resolvedMethods.size() + " methods, " + getMethodStats() + ")";
     }
 }
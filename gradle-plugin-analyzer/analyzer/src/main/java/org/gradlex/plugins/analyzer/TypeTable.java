@@ -0,0 +1,137 @@
+package org.gradlex.plugins.analyzer;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Dense integer ids for the classes in the scope of a {@link TypeRepository}.
+ * <p>
+ * The origin of a class is computed on first access and then looked up by id with a plain array access,
+ * so the classes of the runtime that are never asked for are not classified.
+ * This lets hot paths keep sets of types in bit sets instead of hashing names, references and classes.
+ * Ids are assigned in the order of type names, so they are stable for the same classpath.
+ */
+public class TypeTable {
+    public static final int NO_TYPE = -1;
+
+    private static final TypeOrigin[] ORIGINS = TypeOrigin.values();
+
+    private final IClass[] classes;
+    // The ordinal of the origin plus one, 0 until computed
+    private final byte[] origins;
+    // Type names and classes are interned, so they can be looked up by identity
+    private final IdentityIds idsByName;
+    private final IdentityIds idsByClass;
+
+    TypeTable(IClassHierarchy hierarchy) {
+        // Each name is converted to a string once, not on every comparison
+        List<NamedClass> allClasses = new ArrayList<>(hierarchy.getNumberOfClasses());
+        hierarchy.forEach(type -> allClasses.add(new NamedClass(type.getName().toString(), type)));
+        allClasses.sort(Comparator.comparing(NamedClass::name));
+
+        int size = allClasses.size();
+        this.classes = new IClass[size];
+        this.origins = new byte[size];
+        this.idsByName = new IdentityIds(size);
+        this.idsByClass = new IdentityIds(size);
+        var applicationLoader = hierarchy.getScope().getApplicationLoader();
+        for (int id = 0; id < size; id++) {
+            IClass type = allClasses.get(id).type();
+            classes[id] = type;
+            idsByClass.put(type, id);
+            if (idsByName.get(type.getName()) != NO_TYPE) {
+                // The same name in different class loaders, use the one the resolver would find
+                IClass resolved = hierarchy.lookupClass(TypeReference.findOrCreate(applicationLoader, type.getName()));
+                if (resolved == type) {
+                    idsByName.put(type.getName(), id);
+                }
+            } else {
+                idsByName.put(type.getName(), id);
+            }
+        }
+    }
+
+    public int size() {
+        return classes.length;
+    }
+
+    /**
+     * Returns the id of the class, or {@link #NO_TYPE} if the class is not in scope, e.g. for array classes.
+     */
+    public int getId(IClass type) {
+        return idsByClass.get(type);
+    }
+
+    /**
+     * Returns the id of the class with the given name, or {@link #NO_TYPE} if there is no such class in scope.
+     */
+    public int findId(TypeName name) {
+        return idsByName.get(name);
+    }
+
+    public IClass getClass(int id) {
+        return classes[id];
+    }
+
+    public TypeOrigin getOrigin(int id) {
+        int origin = origins[id];
+        if (origin == 0) {
+            // Racing threads compute the same value, so the unsynchronized write is benign
+            origin = TypeOrigin.of(classes[id]).ordinal() + 1;
+            origins[id] = (byte) origin;
+        }
+        return ORIGINS[origin - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "TypeTable (" + classes.length + " types)";
+    }
+
+    private record NamedClass(String name, IClass type) {
+    }
+
+    /**
+     * Ids keyed by object identity in an open-addressing table, so that looking up an id neither boxes nor calls {@code equals()}.
+     * Only written while the table is created, and read-only afterwards.
+     */
+    private static final class IdentityIds {
+        private final Object[] keys;
+        private final int[] ids;
+        private final int mask;
+
+        IdentityIds(int expectedSize) {
+            // At most half full, so that probe sequences stay short
+            int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+            this.keys = new Object[capacity];
+            this.ids = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(ids, NO_TYPE);
+        }
+
+        void put(Object key, int id) {
+            int index = indexOf(key);
+            keys[index] = key;
+            ids[index] = id;
+        }
+
+        int get(Object key) {
+            return ids[indexOf(key)];
+        }
+
+        private int indexOf(Object key) {
+            int index = (System.identityHashCode(key) * 0x9E3779B9) & mask;
+            while (keys[index] != null && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package org.gradlex.plugins.analyzer;
 
+import com.google.common.collect.MapMaker;
 import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.ShrikeCTMethod;
 import com.ibm.wala.core.util.strings.Atom;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrike.shrikeBT.IInstruction;
 import com.ibm.wala.shrike.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.Selector;
 import com.ibm.wala.types.TypeReference;
 import org.gradlex.plugins.analyzer.TypeReferenceWalker.VisitDecision;
 
+import javax.annotation.Nullable;
+
 import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -21,13 +29,27 @@ import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 public class WalaUtil {
+    // Guards the caches WALA fills in when looking up inherited members, see findMethod()
+    private static final Object INHERITED_MEMBERS_LOCK = new Object();
+    // The declared members of prepared types by selector and name, weakly keyed so that they go away with their hierarchy
+    private static final Map<IClass, DeclaredMembers> DECLARED_MEMBERS = new MapMaker().weakKeys().makeMap();
+
     public static boolean matches(Pattern pattern, Atom name) {
         return pattern.matcher(name.toString()).matches();
     }
 
+    /**
+     * Decodes the instructions of the method body.
+     * <p>
+     * WALA decodes the body lazily and keeps it in an unsynchronized field of the method,
+     * so the method is locked while decoding.
+     */
     public static IInstruction[] instructions(IMethod method) {
         try {
-            IInstruction[] instructions = ((ShrikeCTMethod) method).getInstructions();
+            IInstruction[] instructions;
+            synchronized (method) {
+                instructions = ((ShrikeCTMethod) method).getInstructions();
+            }
             // TODO Why can't we sometimes get the instructions?
             return Objects.requireNonNullElseGet(instructions, () -> new IInstruction[0]);
         } catch (InvalidClassFileException e) {
@@ -35,6 +57,119 @@ public class WalaUtil {
         }
     }
 
+    /**
+     * Returns the exceptions declared by the method, which WALA reads along with the method body, see {@link #instructions(IMethod)}.
+     */
+    @Nullable
+    public static TypeReference[] declaredExceptions(IMethod method) {
+        try {
+            synchronized (method) {
+                return method.getDeclaredExceptions();
+            }
+        } catch (InvalidClassFileException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Looks up the method declared by the type or inherited from its supertypes, like {@link IClass#getMethod(Selector)}.
+     * <p>
+     * WALA caches inherited methods in an unsynchronized map of each class, and classes share supertypes,
+     * so looking up inherited methods is serialized. Declared methods are looked up without the lock first.
+     * Use this instead of {@code IClass.getMethod()} when analyzing types in parallel.
+     */
+    @Nullable
+    public static IMethod findMethod(IClass type, Selector selector) {
+        IMethod declared = findDeclaredMethod(type, selector);
+        if (declared != null) {
+            return declared;
+        }
+        synchronized (INHERITED_MEMBERS_LOCK) {
+            return type.getMethod(selector);
+        }
+    }
+
+    /**
+     * Looks up the field declared by the type or inherited from its supertypes, see {@link #findMethod(IClass, Selector)}.
+     */
+    @Nullable
+    public static IField findField(IClass type, Atom name) {
+        IField declared = findDeclaredField(type, name);
+        if (declared != null) {
+            return declared;
+        }
+        synchronized (INHERITED_MEMBERS_LOCK) {
+            return type.getField(name);
+        }
+    }
+
+    /**
+     * Looks up a method declared by the type itself, which can be done from any thread once the type is {@link #prepare prepared}.
+     */
+    @Nullable
+    public static IMethod findDeclaredMethod(IClass type, Selector selector) {
+        return declaredMembers(type).methods().get(selector);
+    }
+
+    /**
+     * Looks up a field declared by the type itself, see {@link #findDeclaredMethod(IClass, Selector)}.
+     */
+    @Nullable
+    public static IField findDeclaredField(IClass type, Atom name) {
+        return declaredMembers(type).fields().get(name);
+    }
+
+    private static DeclaredMembers declaredMembers(IClass type) {
+        DeclaredMembers members = DECLARED_MEMBERS.get(type);
+        if (members == null) {
+            // Computing the members twice is harmless, the declared members of a prepared type do not change
+            members = DeclaredMembers.of(type);
+            DECLARED_MEMBERS.putIfAbsent(type, members);
+        }
+        return members;
+    }
+
+    /**
+     * Resolves the method like {@link IClassHierarchy#resolveMethod(IClass, Selector)}, see {@link #findMethod(IClass, Selector)}.
+     */
+    @Nullable
+    public static IMethod resolveMethod(IClassHierarchy hierarchy, IClass type, Selector selector) {
+        synchronized (INHERITED_MEMBERS_LOCK) {
+            return hierarchy.resolveMethod(type, selector);
+        }
+    }
+
+    /**
+     * Initializes what WALA computes lazily and without synchronization when reading the type and its supertypes:
+     * the supertypes themselves and the declared methods and fields. Once prepared, these can be read from any thread.
+     *
+     * @param prepared tracks the prepared types, returns {@code false} for types that are already prepared.
+     */
+    static void prepare(IClass type, Predicate<IClass> prepared) {
+        synchronized (INHERITED_MEMBERS_LOCK) {
+            visitHierarchy(type, prepared, current -> {
+                current.getAllImplementedInterfaces();
+                current.getDeclaredMethods();
+                current.getDeclaredInstanceFields();
+                current.getDeclaredStaticFields();
+                return directSuperTypes(current);
+            });
+        }
+    }
+
+    /**
+     * Finds the method overridden by the given method in the closest superclass matching the filter.
+     */
+    @Nullable
+    public static IMethod findOverriddenMethod(IMethod method, Predicate<? super IClass> superclassFilter) {
+        return Stream.iterate(method.getDeclaringClass().getSuperclass(), Objects::nonNull, IClass::getSuperclass)
+            .filter(superclassFilter)
+            // Find the same method in the superclass
+            .flatMap(clazz -> Stream.ofNullable(findMethod(clazz, method.getSelector())))
+            .findFirst()
+            .orElse(null);
+    }
+
     public static boolean matchesType(Supplier<String> typeName, TypeReference reference) {
         return matchesType(typeName.get(), reference);
     }
@@ -88,6 +223,18 @@ public class WalaUtil {
         });
     }
 
+    private record DeclaredMembers(Map<Selector, IMethod> methods, Map<Atom, IField> fields) {
+        static DeclaredMembers of(IClass type) {
+            var methods = new HashMap<Selector, IMethod>();
+            type.getDeclaredMethods().forEach(method -> methods.putIfAbsent(method.getSelector(), method));
+            // Instance fields first, like IClass.getField()
+            var fields = new HashMap<Atom, IField>();
+            type.getDeclaredInstanceFields().forEach(field -> fields.putIfAbsent(field.getName(), field));
+            type.getDeclaredStaticFields().forEach(field -> fields.putIfAbsent(field.getName(), field));
+            return new DeclaredMembers(methods, fields);
+        }
+    }
+
     public static String toFQCN(String internalType) {
         switch (internalType) {
             case "B" -> {
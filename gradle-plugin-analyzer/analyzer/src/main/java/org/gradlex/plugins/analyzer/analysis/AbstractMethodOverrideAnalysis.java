@@ -12,16 +12,13 @@ import com.ibm.wala.shrike.shrikeBT.ILoadInstruction;
 import com.ibm.wala.shrike.shrikeBT.ReturnInstruction;
 import com.ibm.wala.types.TypeReference;
 import org.gradlex.plugins.analyzer.Analysis;
-import org.gradlex.plugins.analyzer.TypeOrigin;
 import org.gradlex.plugins.analyzer.WalaUtil;
 import org.slf4j.event.Level;
 
 import java.util.ArrayDeque;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 public abstract class AbstractMethodOverrideAnalysis implements Analysis {
     private final String methodType;
@@ -43,20 +40,18 @@ public abstract class AbstractMethodOverrideAnalysis implements Analysis {
             .filter(method -> method.isPublic() || method.isProtected())
             // Matching our filter
             .filter(filter)
-            // Walk ancestry
-            .forEach(method -> Stream.iterate(type.getSuperclass(), Objects::nonNull, IClass::getSuperclass)
-                // We only care about methods that come from the Gradle API
-                .filter(TypeOrigin::isGradleApi)
-                // Find the same method in the superclass
-                .flatMap(clazz -> Stream.ofNullable(clazz.getMethod(method.getSelector())))
-                .findFirst()
-                .ifPresent(overriddenMethod -> reportOverriddenMethod(context, method, overriddenMethod))
-            );
+            // Walk ancestry, we only care about methods that come from the Gradle API
+            .forEach(method -> {
+                IMethod overriddenMethod = context.findOverriddenGradleApiMethod(method);
+                if (overriddenMethod != null) {
+                    reportOverriddenMethod(context, method, overriddenMethod);
+                }
+            });
     }
 
     private void reportOverriddenMethod(AnalysisContext context, IMethod method, IMethod overriddenMethod) {
         try {
-            InstructionQueue queue = new InstructionQueue(WalaUtil.instructions(method));
+            InstructionQueue queue = new InstructionQueue(context.getResolver().getInstructions(method));
 
             // Check if dynamic Groovi
             // Invoke(STATIC,<type>;,$getCallSiteArray,()[Lorg/codehaus/groovy/runtime/callsite/CallSite;)
@@ -5,7 +5,6 @@ import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.types.TypeReference;
 import org.gradlex.plugins.analyzer.Analysis;
 import org.gradlex.plugins.analyzer.Reference;
-import org.gradlex.plugins.analyzer.TypeReferenceWalker;
 
 import java.util.LinkedHashSet;
 
@@ -22,17 +21,20 @@ public class FindTypeReferences implements Analysis {
 
     @Override
     public void analyzeType(IClass type, AnalysisContext context) {
+        // Only reports at INFO, so there is nothing to do at higher levels
+        if (!context.isEnabled(INFO)) {
+            return;
+        }
         ImmutableSet<TypeReference> types = typeNames.stream()
             .map(context.getResolver()::getReference)
             .collect(ImmutableSet.toImmutableSet());
 
         var references = new LinkedHashSet<Reference>();
-        TypeReferenceWalker.walkReferences(type, context.getResolver(), __ -> VISIT_AND_CONTINUE, references::add);
+        context.walkReferences(type, __ -> VISIT_AND_CONTINUE, references::add);
 
         references.stream()
             .filter(Reference.sourceIs(EXTERNAL))
             .filter(reference -> reference.target().map(types::contains, __ -> false))
-            .map(Reference::format)
-            .forEach(message -> context.report(INFO, message));
+            .forEach(reference -> context.report(INFO, reference));
     }
 }
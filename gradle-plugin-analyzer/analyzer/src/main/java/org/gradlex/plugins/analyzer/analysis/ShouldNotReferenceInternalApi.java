@@ -4,7 +4,6 @@ import com.ibm.wala.classLoader.IClass;
 import org.gradlex.plugins.analyzer.Analysis;
 import org.gradlex.plugins.analyzer.Reference;
 import org.gradlex.plugins.analyzer.TypeOrigin;
-import org.gradlex.plugins.analyzer.TypeReferenceWalker;
 import org.gradlex.plugins.analyzer.WalaUtil;
 
 import java.util.LinkedHashSet;
@@ -22,10 +21,12 @@ import static org.slf4j.event.Level.WARN;
 public class ShouldNotReferenceInternalApi implements Analysis {
     @Override
     public void analyzeType(IClass type, AnalysisContext context) {
+        if (!context.isEnabled(WARN)) {
+            return;
+        }
         var references = new LinkedHashSet<Reference>();
-        TypeReferenceWalker.walkReferences(
+        context.walkReferences(
             type,
-            context.getResolver(),
             superType -> TypeOrigin.isGradleApi(superType)
                 ? VISIT_AND_STOP
                 : VISIT_AND_CONTINUE,
@@ -35,8 +36,7 @@ public class ShouldNotReferenceInternalApi implements Analysis {
             .filter(Reference.sourceIs(EXTERNAL))
             .filter(Reference.targetIs(INTERNAL)
                 .and(ShouldNotReferenceInternalApi::methodHasNoPublicImplementation))
-            .map(Reference::format)
-            .forEach(message -> context.report(WARN, message));
+            .forEach(reference -> context.report(WARN, reference));
     }
 
     private static boolean methodHasNoPublicImplementation(Reference reference) {
@@ -48,7 +48,7 @@ public class ShouldNotReferenceInternalApi implements Analysis {
                 var hasPublicDefinition = new AtomicBoolean(false);
                 WalaUtil.visitTypeHierarchy(type, superType -> {
                     if (TypeOrigin.isPublicGradleApi(superType)) {
-                        if (superType.getMethod(method.getSelector()) != null) {
+                        if (WalaUtil.findMethod(superType, method.getSelector()) != null) {
                             hasPublicDefinition.set(true);
                             return false;
                         }
@@ -0,0 +1,37 @@
+package org.gradlex.plugins.analyzer
+
+import org.gradlex.plugins.analyzer.analysis.AbstractAnalysisSpec
+
+import java.nio.file.Paths
+
+class ClasspathFootprintTest extends AbstractAnalysisSpec {
+    def "counts classes in jars and directories"() {
+        compileJava """
+            class First {
+            }
+
+            class Second {
+            }
+        """
+
+        when:
+        def directory = ClasspathFootprint.of([targetDirectory.toPath()])
+        def withJar = ClasspathFootprint.of([targetDirectory.toPath(), Paths.get(gradleApi)])
+
+        then:
+        directory.classes() == 2
+        directory.bytecodeBytes() > 0
+        withJar.classes() > 1000
+        withJar.bytecodeBytes() > directory.bytecodeBytes()
+    }
+
+    def "estimates larger heaps for larger classpaths up to the maximum"() {
+        def runtime = new ClasspathFootprint(30_000, 100_000_000)
+
+        expect:
+        ClasspathFootprint.estimateHeapMegabytes(runtime, ClasspathFootprint.EMPTY, false, 4096) == 1024
+        ClasspathFootprint.estimateHeapMegabytes(runtime, ClasspathFootprint.EMPTY, true, 4096) == 768
+        ClasspathFootprint.estimateHeapMegabytes(runtime, new ClasspathFootprint(30_000, 100_000_000), false, 4096) == 1536
+        ClasspathFootprint.estimateHeapMegabytes(runtime, new ClasspathFootprint(1_000_000, 1_000_000_000), false, 4096) == 4096
+    }
+}
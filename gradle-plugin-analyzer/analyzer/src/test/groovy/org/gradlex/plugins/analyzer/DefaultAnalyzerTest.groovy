@@ -8,8 +8,12 @@ import org.gradlex.plugins.analyzer.analysis.TypeShouldExtendType
 import org.gradlex.plugins.analyzer.analysis.TypeShouldNotOverrideGetter
 import org.gradlex.plugins.analyzer.analysis.TypeShouldNotOverrideSetter
 
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+
 import java.nio.file.FileSystem
 import java.nio.file.FileSystems
+import java.nio.file.Files
 import java.nio.file.Path
 import java.util.regex.Pattern
 import java.util.stream.Stream
@@ -17,6 +21,7 @@ import java.util.stream.Stream
 import static org.gradlex.plugins.analyzer.TypeRepository.TypeSet.ALL_EXTERNAL_REFERENCED_TYPES
 import static org.gradlex.plugins.analyzer.TypeRepository.TypeSet.EXTERNAL_TASK_TYPES
 import static org.slf4j.event.Level.INFO
+import static org.slf4j.event.Level.WARN
 
 class DefaultAnalyzerTest extends AbstractAnalysisSpec {
     def "can detect implemented types"() {
@@ -65,12 +70,186 @@ class DefaultAnalyzerTest extends AbstractAnalysisSpec {
 
     }
 
+    def "single pass over multiple analyses reports the same as separate passes"() {
+        def analyses = [
+            new TypeShouldNotOverrideGetter(),
+            new TypeShouldNotOverrideSetter(),
+            new ShouldNotReferenceInternalApi(),
+            new FindTypeReferences("Lorg/gradle/api/resources/TextResource"),
+        ]
+        def defaultAnalyzer = getAnalyzer()
+        def separateReports = analyses.collect { analysis ->
+            List<String> reports = []
+            defaultAnalyzer.analyze(ALL_EXTERNAL_REFERENCED_TYPES, analysis, collectingReporter(reports))
+            reports.sort()
+        }
+        List<List<String>> singlePassReports = analyses.collect { [] }
+
+        when:
+        defaultAnalyzer.analyze([analyses, singlePassReports].transpose().collect { analysis, reports ->
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, analysis as Analysis, collectingReporter(reports as List<String>))
+        })
+
+        then:
+        singlePassReports*.sort() == separateReports
+    }
+
+    def "parallel analysis reports the same as serial analysis"() {
+        def analyses = [
+            new TypeShouldNotOverrideGetter(),
+            new ShouldNotReferenceInternalApi(),
+        ]
+        List<String> serialReports = []
+        List<String> parallelReports = []
+
+        when:
+        createAnalyzer(1).analyze(analyses.collect { new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, it, collectingReporter(serialReports)) })
+        createAnalyzer(4).analyze(analyses.collect { new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, it, collectingReporter(parallelReports)) })
+
+        then:
+        !serialReports.empty
+        parallelReports.sort() == serialReports.sort()
+    }
+
+    def "analyzing a plugin on multiple threads reports the same as on a single thread"() {
+        when:
+        def serialReports = analyzeWithAllAnalyses(1, 1, false)
+        def parallelReports = analyzeWithAllAnalyses(8, 8, streaming)
+
+        then:
+        !serialReports.empty
+        parallelReports.sort() == serialReports.sort()
+
+        where:
+        streaming << [false, true]
+    }
+
+    private List<String> analyzeWithAllAnalyses(int parallelism, int closureParallelism, boolean streaming) {
+        // A new repository each time, so that WALA initializes the classes on the threads of the analysis
+        def repository = TypeRepository.builder()
+            .classpath(files + pluginFiles)
+            .closureParallelism(closureParallelism)
+            .build()
+        List<String> reports = []
+        createAnalyzer(repository, parallelism, streaming).analyze([
+            new Analyzer.Binding(EXTERNAL_TASK_TYPES, new TypeShouldExtendType("Lorg/gradle/api/DefaultTask"), collectingReporter(reports)),
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new TypeShouldNotOverrideGetter(), collectingReporter(reports)),
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new TypeShouldNotOverrideSetter(), collectingReporter(reports)),
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), ReferenceEngine.BYTECODE, collectingReporter(reports)),
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), ReferenceEngine.CONSTANT_POOL, collectingReporter(reports)),
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new FindTypeReferences("Lorg/gradle/api/resources/TextResource"), collectingReporter(reports)),
+        ])
+        reports
+    }
+
+    def "streaming analysis reports the same as non-streaming analysis"() {
+        List<String> reports = []
+        List<String> streamedReports = []
+        def bindings = { List<String> target ->
+            [
+                new Analyzer.Binding(EXTERNAL_TASK_TYPES, new TypeShouldExtendType("Lorg/gradle/api/DefaultTask"), collectingReporter(target)),
+                new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), collectingReporter(target)),
+            ]
+        }
+
+        when:
+        createAnalyzer(1).analyze(bindings(reports))
+        createAnalyzer(2, true).analyze(bindings(streamedReports))
+
+        then:
+        !reports.empty
+        // Also in the same order
+        streamedReports == reports
+    }
+
+    def "constant pool engine reports the same internal API references as the bytecode engine"() {
+        List<String> bytecodeReports = []
+        List<String> constantPoolReports = []
+
+        when:
+        createAnalyzer(1).analyze([new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), ReferenceEngine.BYTECODE, collectingReporter(bytecodeReports))])
+        createAnalyzer(1).analyze([new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), ReferenceEngine.CONSTANT_POOL, collectingReporter(constantPoolReports))])
+
+        then:
+        !bytecodeReports.empty
+        constantPoolReports.sort() == bytecodeReports.sort()
+    }
+
+    def "emits flight recorder events for the phases of the analysis"() {
+        def recording = new Recording()
+        recording.enable(AnalyzerEvents.TypeRepositoryCreation)
+        recording.enable(AnalyzerEvents.ClassHierarchyBuild)
+        recording.enable(AnalyzerEvents.TypeSetLoad)
+        recording.enable(AnalyzerEvents.AnalyzeType)
+        def file = Files.createTempFile("analysis", ".jfr")
+
+        when:
+        recording.start()
+        createAnalyzer(1).analyze([new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), collectingReporter([]))])
+        recording.stop()
+        recording.dump(file)
+        recording.close()
+        def events = RecordingFile.readAllEvents(file).groupBy { it.eventType.name - "org.gradlex.plugins.analyzer." }
+
+        then:
+        events.keySet().containsAll(["TypeRepositoryCreation", "ClassHierarchyBuild", "TypeSetLoad", "AnalyzeType"])
+        events["TypeSetLoad"]*.getString("typeSet").contains(ALL_EXTERNAL_REFERENCED_TYPES.name())
+        events["AnalyzeType"].every { it.getString("analysis") == "ShouldNotReferenceInternalApi" }
+        events["AnalyzeType"].any { it.getInt("references") > 0 }
+    }
+
+    def "only formats messages of enabled levels"() {
+        compileJava """
+            abstract class BadTask extends org.gradle.api.tasks.SourceTask {
+                private org.gradle.api.resources.TextResource resource;
+            }
+        """
+        List<Object> formatted = []
+        List<String> reports = []
+        List<String> allReports = []
+        def analyzer = new DefaultAnalyzer(getRepository(), { arg ->
+            formatted += arg
+            arg.toString()
+        })
+        def bindings = { Reporter reporter ->
+            [
+                new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new FindTypeReferences("Lorg/gradle/api/resources/TextResource"), reporter),
+                new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, new TypeShouldExtendType("Lorg/gradle/api/DefaultTask"), reporter),
+            ]
+        }
+
+        when:
+        analyzer.analyze(bindings(Reporter.filtering(WARN, collectingReporter(reports))))
+
+        then:
+        !reports.empty
+        reports.every { it.startsWith("WARN: ") }
+        reports.any { it.contains("LBadTask") && it.contains("Lorg/gradle/api/tasks/SourceTask") }
+        // Each warning about the extended type has three arguments
+        formatted.size() == reports.size() * 3
+
+        when:
+        analyzer.analyze(bindings(collectingReporter(allReports)))
+
+        then:
+        // The skipped messages are there when their level is enabled
+        allReports.any { it.startsWith("INFO: ") && it.contains("TextResource") }
+        allReports.findAll { it.startsWith("WARN: ") } == reports
+    }
+
+    private static Reporter collectingReporter(List<String> reports) {
+        { level, message, args -> reports.add("$level: ${message.formatted(args)}" as String) } as Reporter
+    }
+
     @Override
     protected TypeRepository getRepository() {
-        def pluginFiles = explode(System.getProperty("plugin-files"), FileSystems.default).toList()
         return new TypeRepository(files + pluginFiles)
     }
 
+    private static List<Path> getPluginFiles() {
+        explode(System.getProperty("plugin-files"), FileSystems.default).toList()
+    }
+
     @Override
     protected Reporter getReporter() {
         { level, message, args -> println("$level: ${message.formatted(args)}") }
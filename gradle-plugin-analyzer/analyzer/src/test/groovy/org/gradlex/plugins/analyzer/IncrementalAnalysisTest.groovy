@@ -0,0 +1,130 @@
+package org.gradlex.plugins.analyzer
+
+import org.gradlex.plugins.analyzer.analysis.AbstractAnalysisSpec
+import org.gradlex.plugins.analyzer.analysis.ShouldNotReferenceInternalApi
+import org.gradlex.plugins.analyzer.analysis.TypeShouldExtendType
+
+import java.nio.file.Files
+import java.nio.file.Paths
+
+import static org.gradlex.plugins.analyzer.TypeRepository.TypeSet.ALL_EXTERNAL_REFERENCED_TYPES
+import static org.gradlex.plugins.analyzer.TypeRepository.TypeSet.EXTERNAL_TASK_TYPES
+
+class IncrementalAnalysisTest extends AbstractAnalysisSpec {
+    def stateFile = Files.createTempDirectory("incremental").resolve("plugin.state")
+
+    def "incremental analysis reports the same as a full analysis"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.internal.AbstractTask {
+                Helper helper = new Helper();
+            }
+
+            class Helper {
+                void help(org.gradle.api.Project project) {
+                }
+            }
+
+            class Unrelated {
+            }
+        """
+
+        expect:
+        analyzeIncrementally() == analyzeFully()
+
+        when:
+        // Only the helper changes, so the task depending on it is analyzed again
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.internal.AbstractTask {
+                Helper helper = new Helper();
+            }
+
+            class Helper {
+                void help(org.gradle.api.internal.project.ProjectInternal project) {
+                }
+            }
+
+            class Unrelated {
+            }
+        """
+
+        then:
+        analyzeIncrementally() == analyzeFully()
+        analyzeIncrementally().any { it.contains("ProjectInternal") }
+    }
+
+    def "only analyzes changed types and the types depending on them"() {
+        def sources = { String projectType ->
+            """
+                abstract class CustomTask extends org.gradle.api.internal.AbstractTask {
+                    Helper helper = new Helper();
+                    Other other = new Other();
+                }
+
+                class Helper {
+                    void help($projectType project) {
+                    }
+                }
+
+                class Other {
+                }
+            """
+        }
+        compileJava sources("org.gradle.api.Project")
+        List<String> analyzedTypes = []
+
+        when:
+        analyzeIncrementally(analyzedTypes)
+
+        then:
+        analyzedTypes.sort() == ["LCustomTask", "LHelper", "LOther"]
+
+        when:
+        analyzedTypes.clear()
+        analyzeIncrementally(analyzedTypes)
+
+        then:
+        analyzedTypes.empty
+
+        when:
+        compileJava sources("org.gradle.api.internal.project.ProjectInternal")
+        analyzedTypes.clear()
+        def reports = analyzeIncrementally(analyzedTypes)
+
+        then:
+        // The task depends on the helper, the other type is reused
+        analyzedTypes.sort() == ["LCustomTask", "LHelper"]
+        reports == analyzeFully()
+    }
+
+    private List<String> analyzeIncrementally(List<String> analyzedTypes = []) {
+        List<String> reports = []
+        (createAnalyzer(1) as DefaultAnalyzer).analyzeIncrementally(bindings(reports, analyzedTypes), stateFile, "test")
+        return reports.sort()
+    }
+
+    private List<String> analyzeFully() {
+        List<String> reports = []
+        createAnalyzer(1).analyze(bindings(reports))
+        return reports.sort()
+    }
+
+    private static List<Analyzer.Binding> bindings(List<String> reports, List<String> analyzedTypes = []) {
+        Reporter reporter = { level, message, args -> reports.add("$level: ${message.formatted(args)}" as String) } as Reporter
+        def analysis = new ShouldNotReferenceInternalApi()
+        return [
+            new Analyzer.Binding(EXTERNAL_TASK_TYPES, new TypeShouldExtendType("Lorg/gradle/api/DefaultTask"), reporter),
+            new Analyzer.Binding(ALL_EXTERNAL_REFERENCED_TYPES, { type, context ->
+                analyzedTypes.add(type.name.toString())
+                analysis.analyzeType(type, context)
+            } as Analysis, reporter),
+        ]
+    }
+
+    @Override
+    protected TypeRepository getRepository() {
+        TypeRepository.builder()
+            .runtime([Paths.get(gradleApi)])
+            .classpath([targetDirectory.toPath()])
+            .build()
+    }
+}
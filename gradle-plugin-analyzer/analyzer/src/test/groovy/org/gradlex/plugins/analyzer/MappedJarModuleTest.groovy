@@ -0,0 +1,120 @@
+package org.gradlex.plugins.analyzer
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.jar.JarFile
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class MappedJarModuleTest extends Specification {
+    def "reads the same entries as JarFile"() {
+        def path = Paths.get(System.getProperty("gradle-api"))
+
+        when:
+        def module = MappedJarModule.open(path)
+        def mapped = module.entries.collectEntries { [it.name, it.inputStream.bytes] }
+
+        then:
+        def jar = new JarFile(path.toFile(), false)
+        def expected = jar.entries().findAll { !it.directory }.collectEntries { [it.name, jar.getInputStream(it).bytes] }
+        jar.close()
+        mapped.keySet() == expected.keySet()
+        mapped.every { name, bytes -> Arrays.equals(bytes, expected[name] as byte[]) }
+    }
+
+    def "reads stored and deflated entries of ZIP64 jars"() {
+        def path = Files.createTempFile("zip64", ".jar")
+        // More entries than fit into the end of central directory record
+        def count = 0x10000 + 1
+        new ZipOutputStream(Files.newOutputStream(path)).withCloseable { output ->
+            count.times { index ->
+                def content = "content $index".bytes
+                def entry = new ZipEntry("p/C${index}.class")
+                if (index % 2 == 0) {
+                    def crc = new CRC32()
+                    crc.update(content)
+                    entry.method = ZipEntry.STORED
+                    entry.size = content.length
+                    entry.crc = crc.value
+                }
+                output.putNextEntry(entry)
+                output.write(content)
+                output.closeEntry()
+            }
+        }
+
+        when:
+        def entries = MappedJarModule.open(path).entries.toList()
+
+        then:
+        entries.size() == count
+        entries[0].className == "p/C0"
+        new String(entries[0].inputStream.bytes) == "content 0"
+        new String(entries[count - 1].inputStream.bytes) == "content ${count - 1}"
+    }
+
+    def "reads nested jars as modules"() {
+        def path = Files.createTempFile("nested", ".jar")
+        new ZipOutputStream(Files.newOutputStream(path)).withCloseable { output ->
+            def stored = jar("p/Stored.class", "stored")
+            def crc = new CRC32()
+            crc.update(stored)
+            def entry = new ZipEntry("lib/stored.jar")
+            entry.method = ZipEntry.STORED
+            entry.size = stored.length
+            entry.crc = crc.value
+            output.putNextEntry(entry)
+            output.write(stored)
+            output.closeEntry()
+            output.putNextEntry(new ZipEntry("lib/deflated.jar"))
+            output.write(jar("p/Deflated.class", "deflated"))
+            output.closeEntry()
+        }
+
+        when:
+        def module = MappedJarModule.open(path)
+        def nested = module.entries.toList().collectEntries { entry ->
+            def nestedEntry = entry.asModule().entries.next()
+            [entry.name, "${nestedEntry.className} ${new String(nestedEntry.inputStream.bytes)}"]
+        }
+
+        then:
+        module.entries.every { it.moduleFile }
+        nested == ["lib/stored.jar": "p/Stored stored", "lib/deflated.jar": "p/Deflated deflated"]
+
+        when:
+        def openedBeforeClose = module.entries.next().inputStream
+        def nestedModule = module.entries.next().asModule()
+        module.close()
+
+        then:
+        // Streams do not point into the unmapped file
+        openedBeforeClose.bytes.length > 0
+
+        when:
+        module.entries.next().inputStream
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        nestedModule.entries.next().inputStream
+
+        then:
+        thrown(IllegalStateException)
+        Files.deleteIfExists(path)
+    }
+
+    private static byte[] jar(String name, String content) {
+        def bytes = new ByteArrayOutputStream()
+        new ZipOutputStream(bytes).withCloseable { output ->
+            output.putNextEntry(new ZipEntry(name))
+            output.write(content.bytes)
+            output.closeEntry()
+        }
+        bytes.toByteArray()
+    }
+}
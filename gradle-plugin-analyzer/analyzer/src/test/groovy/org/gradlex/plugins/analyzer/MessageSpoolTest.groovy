@@ -0,0 +1,58 @@
+package org.gradlex.plugins.analyzer
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static org.slf4j.event.Level.INFO
+import static org.slf4j.event.Level.WARN
+
+class MessageSpoolTest extends Specification {
+    @TempDir
+    Path directory
+
+    def "returns messages sorted without duplicates"() {
+        def spool = new MessageSpool(directory, maximumBufferedChars)
+
+        when:
+        def expected = new TreeSet<String>()
+        1000.times { index ->
+            def message = "message ${(index * 7919) % 300}"
+            spool.add(INFO, message)
+            expected.add(message)
+        }
+        def messages = []
+        spool.forEachSorted { level, message -> messages += message }
+
+        then:
+        messages == expected.toList()
+        Files.list(directory).count() == runs
+
+        when:
+        spool.close()
+
+        then:
+        Files.list(directory).count() == 0
+
+        where:
+        maximumBufferedChars                        | runs
+        MessageSpool.DEFAULT_MAXIMUM_BUFFERED_CHARS | 0
+        100                                         | 100
+    }
+
+    def "keeps the first of messages with the same text"() {
+        def spool = new MessageSpool(directory, 10)
+
+        when:
+        spool.add(WARN, "duplicate message")
+        spool.add(INFO, "duplicate message")
+        spool.add(INFO, "another message")
+        def messages = []
+        spool.forEachSorted { level, message -> messages += "$level $message" }
+
+        then:
+        messages == ["INFO another message", "WARN duplicate message"]
+    }
+}
@@ -0,0 +1,86 @@
+package org.gradlex.plugins.analyzer
+
+import org.gradlex.plugins.analyzer.analysis.AbstractAnalysisSpec
+
+import java.nio.file.Files
+import java.nio.file.Paths
+
+class ReferenceIndexTest extends AbstractAnalysisSpec {
+    def "indexed references are the same as walked references"() {
+        compileJava """
+            import java.lang.annotation.*;
+
+            @Retention(RetentionPolicy.CLASS)
+            @interface ClassRef {
+                Class<?> value();
+            }
+
+            @ClassRef(org.gradle.api.internal.TaskOutputsInternal.class)
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                private org.gradle.api.internal.TaskInputsInternal inputs;
+
+                public String describe(org.gradle.api.Project project) throws java.io.IOException {
+                    return project.getName() + getOutputs().getHasOutput();
+                }
+            }
+        """
+        def indexDirectory = Files.createTempDirectory("reference-index")
+
+        when:
+        def walked = walkDeclaredReferences(new TypeRepository(files))
+        def indexed = walkDeclaredReferences(createIndexedRepository(indexDirectory))
+
+        then:
+        indexed == walked
+        walked.any { it.contains("TaskInputsInternal") }
+        Files.list(indexDirectory).toList()*.fileName*.toString() == ["${ContentHashes.hash(targetDirectory.toPath())}.refs" as String]
+
+        when:
+        def reloaded = walkDeclaredReferences(createIndexedRepository(indexDirectory))
+
+        then:
+        reloaded == walked
+    }
+
+    def "classes shadowed by an earlier classpath entry are replayed from that entry"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                private org.gradle.api.internal.TaskInputsInternal inputs;
+            }
+        """
+        def shadowedDirectory = Files.createTempDirectory("shadowed-classes")
+        Files.copy(targetDirectory.toPath().resolve("CustomTask.class"), shadowedDirectory.resolve("CustomTask.class"))
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                private org.gradle.api.internal.TaskOutputsInternal outputs;
+            }
+        """
+        def classpath = [targetDirectory.toPath(), shadowedDirectory]
+        def indexDirectory = Files.createTempDirectory("reference-index")
+
+        when:
+        def walked = walkDeclaredReferences(new TypeRepository([Paths.get(gradleApi)] + classpath))
+        def indexed = walkDeclaredReferences(createIndexedRepository(indexDirectory, classpath))
+
+        then:
+        indexed == walked
+        walked.any { it.contains("TaskOutputsInternal") }
+        !walked.any { it.contains("TaskInputsInternal") }
+    }
+
+    private TypeRepository createIndexedRepository(indexDirectory, classpath = [targetDirectory.toPath()]) {
+        TypeRepository.builder()
+            .runtime([Paths.get(gradleApi)])
+            .classpath(classpath)
+            .referenceIndexDirectory(indexDirectory)
+            .build()
+    }
+
+    private static List<String> walkDeclaredReferences(TypeRepository repository) {
+        def references = []
+        repository.walkDeclaredReferences(repository.typeResolver.findClass("LCustomTask")) { reference ->
+            references += "${reference.source()} -> ${reference.target()}" as String
+        }
+        return references
+    }
+}
@@ -0,0 +1,23 @@
+package org.gradlex.plugins.analyzer
+
+import spock.lang.Specification
+
+import static org.slf4j.event.Level.INFO
+import static org.slf4j.event.Level.WARN
+
+class ReportSpoolTest extends Specification {
+    def "replays reports in the order of the types"() {
+        def spool = new ReportSpool(10)
+
+        when:
+        spool.write(7, [new ReportSpool.Report(1, WARN, "seventh %s", ["type"] as Object[])])
+        spool.write(2, [new ReportSpool.Report(0, INFO, "second", [] as Object[]), new ReportSpool.Report(1, WARN, "also second", [null] as Object[])])
+        spool.write(5, [])
+        def reports = []
+        spool.replay { reports += "${it.binding()} ${it.level()} ${it.message().formatted(it.args())}" }
+        spool.close()
+
+        then:
+        reports == ["0 INFO second", "1 WARN also second", "1 WARN seventh type"]
+    }
+}
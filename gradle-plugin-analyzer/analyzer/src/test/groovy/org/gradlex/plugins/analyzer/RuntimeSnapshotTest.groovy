@@ -0,0 +1,123 @@
+package org.gradlex.plugins.analyzer
+
+import org.gradlex.plugins.analyzer.analysis.AbstractAnalysisSpec
+
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.FileTime
+
+import static org.gradlex.plugins.analyzer.TypeRepository.TypeSet.ALL_EXTERNAL_REFERENCED_TYPES
+
+class RuntimeSnapshotTest extends AbstractAnalysisSpec {
+    def "snapshot is created and reused"() {
+        def snapshotDirectory = Files.createTempDirectory("runtime-snapshots")
+        def runtime = [Paths.get(gradleApi)]
+
+        when:
+        def snapshot = RuntimeSnapshot.loadOrCreate(snapshotDirectory, runtime)
+
+        then:
+        Files.list(snapshotDirectory).toList()*.fileName*.toString() == ["${RuntimeSnapshot.key(runtime)}.snapshot" as String]
+        snapshot.findSupertypes("org/gradle/api/DefaultTask")[0] == "org/gradle/api/internal/AbstractTask"
+        snapshot.findSupertypes("org/gradle/api/Task").contains("java/lang/Comparable")
+
+        when:
+        def loaded = RuntimeSnapshot.read(snapshotDirectory.resolve("${snapshot.key}.snapshot"), snapshot.key)
+
+        then:
+        loaded.supertypes == snapshot.supertypes
+    }
+
+    def "lazy hierarchy finds the same runtime classes with a snapshot"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                private org.gradle.api.internal.TaskInputsInternal inputs;
+            }
+        """
+        def snapshotDirectory = Files.createTempDirectory("runtime-snapshots")
+        def runtime = [Paths.get(gradleApi)]
+
+        when:
+        def withoutSnapshot = TypeRepository.builder()
+            .runtime(runtime)
+            .classpath([targetDirectory.toPath()])
+            .lazyHierarchy(true)
+            .build()
+        def withSnapshot = TypeRepository.builder()
+            .runtime(runtime)
+            .classpath([targetDirectory.toPath()])
+            .snapshotDirectory(snapshotDirectory)
+            .lazyHierarchy(true)
+            .build()
+
+        then:
+        typeNames(withSnapshot) == typeNames(withoutSnapshot)
+        withSnapshot.getTypeSet(ALL_EXTERNAL_REFERENCED_TYPES)*.name*.toString() == ["LCustomTask"]
+    }
+
+    def "shared runtime layer is reused by repositories"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+            }
+        """
+        def snapshotDirectory = Files.createTempDirectory("runtime-snapshots")
+        def runtime = [Paths.get(gradleApi)]
+
+        when:
+        def layer = RuntimeLayer.shared(runtime, snapshotDirectory)
+        TypeRepository.builder()
+            .runtimeLayer(layer)
+            .classpath([targetDirectory.toPath()])
+            .lazyHierarchy(true)
+            .build()
+        def snapshot = layer.findSnapshot()
+        def second = TypeRepository.builder()
+            .runtimeLayer(RuntimeLayer.shared(runtime, snapshotDirectory))
+            .classpath([targetDirectory.toPath()])
+            .lazyHierarchy(true)
+            .build()
+
+        then:
+        RuntimeLayer.shared(runtime, snapshotDirectory).is(layer)
+        layer.findSnapshot().is(snapshot)
+        second.getTypeSet(TypeRepository.TypeSet.EXTERNAL_TASK_TYPES)*.name*.toString() == ["LCustomTask"]
+    }
+
+    def "replaced shared layer releases its jars once no repository uses it"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+            }
+        """
+        def runtimeJar = Files.createTempFile("runtime", ".jar")
+        Files.copy(Paths.get(gradleApi), runtimeJar, StandardCopyOption.REPLACE_EXISTING)
+        def runtime = [runtimeJar]
+
+        when:
+        def layer = RuntimeLayer.shared(runtime, null)
+        def repository = TypeRepository.builder()
+            .runtimeLayer(layer)
+            .classpath([targetDirectory.toPath()])
+            .build()
+        Files.setLastModifiedTime(runtimeJar, FileTime.fromMillis(Files.getLastModifiedTime(runtimeJar).toMillis() + 1000))
+        def replacement = RuntimeLayer.shared(runtime, null)
+
+        then:
+        !replacement.is(layer)
+        layer.modules[0].entries.next().inputStream.close()
+
+        when:
+        repository.close()
+        layer.modules[0].entries.next().inputStream
+
+        then:
+        thrown(IllegalStateException)
+
+        cleanup:
+        Files.deleteIfExists(runtimeJar)
+    }
+
+    private static List<String> typeNames(TypeRepository repository) {
+        (0..<repository.typeTable.size()).collect { repository.typeTable.getClass(it).name.toString() }.sort()
+    }
+}
@@ -6,6 +6,7 @@ import spock.lang.Specification
 import static org.gradlex.plugins.analyzer.TypeOrigin.EXTERNAL
 import static org.gradlex.plugins.analyzer.TypeOrigin.INTERNAL
 import static org.gradlex.plugins.analyzer.TypeOrigin.PUBLIC
+import static org.gradlex.plugins.analyzer.TypeOrigin.RUNTIME
 
 class TypeOriginTest extends Specification {
     def "identifies packages correctly"() {
@@ -23,6 +24,21 @@ class TypeOriginTest extends Specification {
         originOf("LCustomTask") == EXTERNAL
     }
 
+    def "identifies nested and prefixed packages correctly"() {
+        expect:
+        originOf("Lorg/gradle/api/tasks/internal/Foo") == INTERNAL
+        originOf("Lorg/gradle/plugin/use/PluginId") == PUBLIC
+        originOf("Lorg/gradle/plugin/use/internal/Foo") == INTERNAL
+        originOf("Lorg/gradle/plugin/Foo") == INTERNAL
+        originOf("Ljavafx/scene/Node") == RUNTIME
+        originOf("Lkotlinx/coroutines/Job") == RUNTIME
+        originOf("Lorg/codehaus/groovy/runtime/InvokerHelper") == RUNTIME
+        originOf("Lorg/codehaus/foo/Bar") == EXTERNAL
+        originOf("Lorg/slf4j/impl/StaticLoggerBinder") == RUNTIME
+        originOf("[Lorg/gradle/api/Task") == PUBLIC
+        originOf("I") == RUNTIME
+    }
+
     private static TypeOrigin originOf(String type) {
         return TypeOrigin.of(TypeName.findOrCreate(type))
     }
@@ -1,8 +1,12 @@
 package org.gradlex.plugins.analyzer
 
+import com.ibm.wala.types.ClassLoaderReference
+import com.ibm.wala.types.TypeReference
 import org.gradlex.plugins.analyzer.TypeRepository.TypeSet
 import org.gradlex.plugins.analyzer.analysis.AbstractAnalysisSpec
 
+import java.nio.file.Paths
+
 import static org.gradlex.plugins.analyzer.TypeRepository.TypeSet.*
 
 class TypeRepositoryTest extends AbstractAnalysisSpec {
@@ -31,6 +35,212 @@ class TypeRepositoryTest extends AbstractAnalysisSpec {
         typeNames(repository, ALL_EXTERNAL_REFERENCED_TYPES) == ["LCustomPlugin", "LCustomTask"]
     }
 
+    def "type table assigns ids to all types in scope"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+            }
+        """
+
+        def repository = new TypeRepository(files)
+        def typeTable = repository.typeTable
+        def customTask = repository.typeResolver.findClass("LCustomTask")
+        def id = typeTable.getId(customTask)
+
+        expect:
+        typeTable.getClass(id) == customTask
+        typeTable.findId(customTask.name) == id
+        repository.typeResolver.findTypeId("LCustomTask") == id
+        typeTable.getOrigin(id) == TypeOrigin.of(customTask)
+        repository.typeResolver.findTypeId("LDoesNotExist") == TypeTable.NO_TYPE
+
+        repository.getTypeSetIds(EXTERNAL_TASK_TYPES).stream().toArray().toList() == [id]
+        repository.getTypeSetIds(TASK_TYPES).cardinality() == repository.getTypeSet(TASK_TYPES).size()
+    }
+
+    def "decoded instructions are cached"() {
+        compileJava """
+            class Helper {
+                String help(Object value) {
+                    return String.valueOf(value);
+                }
+            }
+        """
+
+        def repository = new TypeRepository(files)
+        def method = repository.typeResolver.findClass("LHelper").declaredMethods.find { it.name.toString() == "help" }
+
+        when:
+        def first = repository.typeResolver.getInstructions(method)
+        def second = repository.typeResolver.getInstructions(method)
+
+        then:
+        first.length > 0
+        second.is(first)
+        repository.instructionCache.stats().hitCount() == 1
+        repository.instructionCache.stats().missCount() == 1
+    }
+
+    def "declared references walked for the closure are kept"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                private org.gradle.api.internal.TaskInputsInternal inputs;
+            }
+        """
+
+        def repository = new TypeRepository(files)
+        def customTask = repository.typeResolver.findClass("LCustomTask")
+        def walked = []
+        repository.walkDeclaredReferences(customTask) { walked += it.toString() }
+
+        expect:
+        repository.findDeclaredReferences(customTask) == null
+
+        when:
+        repository.getTypeSet(ALL_EXTERNAL_REFERENCED_TYPES)
+        def kept = repository.findDeclaredReferences(customTask)
+
+        then:
+        kept.references()*.toString() == walked
+        kept.dependencies().contains("LCustomTask")
+    }
+
+    def "resolved type names are cached"() {
+        def repository = new TypeRepository(files)
+        def resolver = repository.typeResolver
+
+        when:
+        def first = resolver.findClass("Lorg/gradle/api/Task;")
+        def second = resolver.findClass("Lorg/gradle/api/Task;")
+        def missing = resolver.findReference("Lcom/example/DoesNotExist;")
+        def missingAgain = resolver.findReference("Lcom/example/DoesNotExist;")
+
+        then:
+        first != null
+        second.is(first)
+        resolver.findReference("Lorg/gradle/api/Task;") == first.reference
+        missing == null
+        missingAgain == null
+        resolver.nameStats.missCount() == 3
+        resolver.nameStats.hitCount() == 2
+    }
+
+    def "names that do not resolve are looked up again"() {
+        def repository = new TypeRepository(files)
+        def resolver = repository.typeResolver
+
+        when:
+        def missing = resolver.findReference("Lcom/example/InternedLater;")
+        TypeReference.findOrCreate(ClassLoaderReference.Application, "Lcom/example/InternedLater")
+        def found = resolver.findReference("Lcom/example/InternedLater;")
+
+        then:
+        missing == null
+        found.name.toString() == "Lcom/example/InternedLater"
+        resolver.findClass("Lcom/example/InternedLater;") == null
+    }
+
+    def "resolved methods are cached"() {
+        def repository = new TypeRepository(files)
+        def resolver = repository.typeResolver
+
+        when:
+        def first = resolver.resolveMethod("Lorg/gradle/api/Task;", "getProject()Lorg/gradle/api/Project;")
+        def second = resolver.resolveMethod("Lorg/gradle/api/Task;", "getProject()Lorg/gradle/api/Project;")
+        def missing = resolver.resolveMethod("Lorg/gradle/api/Task;", "doesNotExist()V")
+        def missingAgain = resolver.resolveMethod("Lorg/gradle/api/Task;", "doesNotExist()V")
+
+        then:
+        first != null
+        second.is(first)
+        missing == null
+        missingAgain == null
+        resolver.methodStats.missCount() == 2
+        resolver.methodStats.hitCount() == 2
+    }
+
+    def "parallel closure finds the same types as serial closure"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                Helper helper = new Helper();
+            }
+
+            class Helper {
+                Other other() {
+                    return new Other();
+                }
+            }
+
+            class Other {
+            }
+        """
+
+        def parallelRepository = TypeRepository.builder()
+            .classpath(files)
+            .closureParallelism(4)
+            .build()
+
+        expect:
+        typeNames(parallelRepository, ALL_EXTERNAL_REFERENCED_TYPES) == typeNames(new TypeRepository(files), ALL_EXTERNAL_REFERENCED_TYPES)
+        typeNames(parallelRepository, ALL_EXTERNAL_REFERENCED_TYPES) == ["LCustomTask", "LHelper", "LOther"]
+    }
+
+    def "lazy hierarchy only loads reachable runtime classes"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                private org.gradle.api.internal.TaskInputsInternal inputs;
+            }
+
+            abstract class CustomPlugin implements org.gradle.api.Plugin<org.gradle.api.Project> {
+            }
+        """
+
+        def eager = createRepository(false)
+        def lazy = createRepository(true)
+
+        expect:
+        lazy.typeTable.size() < eager.typeTable.size()
+        lazy.typeResolver.findClass("Lorg/gradle/api/internal/TaskInputsInternal") != null
+        lazy.typeResolver.findClass("Lorg/gradle/api/internal/AbstractTask") != null
+        typeNames(lazy, ALL_EXTERNAL_TYPES) == typeNames(eager, ALL_EXTERNAL_TYPES)
+        typeNames(lazy, ALL_EXTERNAL_REFERENCED_TYPES) == typeNames(eager, ALL_EXTERNAL_REFERENCED_TYPES)
+    }
+
+    def "phases and counters are recorded"() {
+        compileJava """
+            abstract class CustomTask extends org.gradle.api.DefaultTask {
+                Helper helper = new Helper();
+            }
+
+            class Helper {
+            }
+        """
+
+        def repository = new TypeRepository(files)
+
+        when:
+        long start = System.nanoTime()
+        repository.getTypeSet(ALL_EXTERNAL_REFERENCED_TYPES)
+        long elapsedMillis = (System.nanoTime() - start).intdiv(1_000_000)
+        def metrics = repository.performanceMetrics
+
+        then:
+        metrics.phaseMillis.keySet().containsAll([PerformanceMetrics.HIERARCHY, PerformanceMetrics.TYPE_TABLE, PerformanceMetrics.TYPE_SET_PREFIX + ALL_EXTERNAL_REFERENCED_TYPES.name()])
+        // The sets the closure is derived from are not counted twice
+        metrics.phaseMillis.findAll { it.key.startsWith(PerformanceMetrics.TYPE_SET_PREFIX) }.values().sum() <= elapsedMillis
+        metrics.counters[PerformanceMetrics.CLASSES_IN_SCOPE] == repository.typeTable.size()
+        metrics.counters[PerformanceMetrics.TYPES_IN_SET_PREFIX + ALL_EXTERNAL_REFERENCED_TYPES.name()] == 2
+        metrics.counters[PerformanceMetrics.REFERENCES_WALKED] > 0
+        metrics.counters[PerformanceMetrics.INSTRUCTIONS_DECODED] > 0
+    }
+
+    private TypeRepository createRepository(boolean lazyHierarchy) {
+        TypeRepository.builder()
+            .runtime([Paths.get(gradleApi)])
+            .classpath([targetDirectory.toPath()])
+            .lazyHierarchy(lazyHierarchy)
+            .build()
+    }
+
     private static List<String> typeNames(TypeRepository repository, TypeSet set) {
         repository.getTypeSet(set)*.name*.toString().sort()
     }
@@ -55,7 +55,19 @@ class AbstractAnalysisSpec extends Specification {
     }
 
     protected Analyzer getAnalyzer() {
-        analyzer = new DefaultAnalyzer(getRepository(), { arg ->
+        analyzer = createAnalyzer(1)
+    }
+
+    protected Analyzer createAnalyzer(int parallelism) {
+        createAnalyzer(parallelism, false)
+    }
+
+    protected Analyzer createAnalyzer(int parallelism, boolean streaming) {
+        createAnalyzer(getRepository(), parallelism, streaming)
+    }
+
+    protected static Analyzer createAnalyzer(TypeRepository repository, int parallelism, boolean streaming) {
+        new DefaultAnalyzer(repository, parallelism, streaming, { arg ->
             switch (arg) {
                 case IClass:
                     "type ${arg.name}"
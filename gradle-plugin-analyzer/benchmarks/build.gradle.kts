@@ -0,0 +1,54 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+repositories {
+    mavenCentral()
+    gradlePluginPortal()
+}
+
+val kotlinVersion = "1.9.25"
+
+configurations {
+    create("pluginUnderTest")
+    create("groovyRuntime")
+    create("kotlinRuntime")
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(21)
+    }
+}
+
+dependencies {
+    jmhImplementation(projects.analyzer)
+    jmhImplementation("org.slf4j:slf4j-api:2.0.7")
+    jmhRuntimeOnly("org.slf4j:slf4j-simple:2.0.7")
+
+    // The same fixtures as the tests of the analyzer
+    "pluginUnderTest"("com.adarshr:gradle-test-logger-plugin:3.2.0")
+    "groovyRuntime"(localGroovy())
+    "kotlinRuntime"("org.jetbrains.kotlin:kotlin-stdlib:$kotlinVersion")
+}
+
+// Run with `gradle :benchmarks:jmh`, the results are written to build/results/jmh
+jmh {
+    jmhVersion = "1.37"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    // Report allocation rates next to the timings
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    jvmArgsAppend = provider {
+        listOf(
+            "-Xmx4096m",
+            "-Dgradle-api=${gradle.gradleUserHomeDir}/caches/${gradle.gradleVersion}/generated-gradle-jars/gradle-api-${gradle.gradleVersion}.jar",
+            "-Dlocal-groovy=${configurations["groovyRuntime"].files.joinToString(File.pathSeparator) { it.absolutePath }}",
+            "-Dlocal-kotlin=${configurations["kotlinRuntime"].files.joinToString(File.pathSeparator) { it.absolutePath }}",
+            "-Dplugin-files=${configurations["pluginUnderTest"].files.joinToString(File.pathSeparator) { it.absolutePath }}",
+        )
+    }
+}
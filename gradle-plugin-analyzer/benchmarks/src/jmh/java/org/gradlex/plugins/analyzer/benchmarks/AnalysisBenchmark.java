@@ -0,0 +1,76 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.Analysis;
+import org.gradlex.plugins.analyzer.Analyzer;
+import org.gradlex.plugins.analyzer.DefaultAnalyzer;
+import org.gradlex.plugins.analyzer.ReferenceEngine;
+import org.gradlex.plugins.analyzer.TypeRepository;
+import org.gradlex.plugins.analyzer.TypeRepository.TypeSet;
+import org.gradlex.plugins.analyzer.analysis.FindTypeReferences;
+import org.gradlex.plugins.analyzer.analysis.ShouldNotReferenceInternalApi;
+import org.gradlex.plugins.analyzer.analysis.TypeShouldExtendType;
+import org.gradlex.plugins.analyzer.analysis.TypeShouldNotOverrideGetter;
+import org.gradlex.plugins.analyzer.analysis.TypeShouldNotOverrideSetter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running a built-in analysis over {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES}, which is loaded during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnalysisBenchmark {
+    @Param({
+        "TypeShouldExtendType",
+        "TypeShouldNotOverrideGetter",
+        "TypeShouldNotOverrideSetter",
+        "ShouldNotReferenceInternalApi",
+        "FindTypeReferences",
+    })
+    public String analysis;
+
+    @Param({"BYTECODE", "CONSTANT_POOL"})
+    public ReferenceEngine engine;
+
+    private DefaultAnalyzer analyzer;
+
+    @Setup
+    public void createAnalyzer() throws IOException, ClassHierarchyException {
+        TypeRepository repository = BenchmarkFixtures.createRepository();
+        repository.getTypeSet(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES);
+        analyzer = new DefaultAnalyzer(repository, String::valueOf);
+    }
+
+    @Benchmark
+    public void analyze(Blackhole blackhole) {
+        analyzer.analyze(List.of(new Analyzer.Binding(
+            TypeSet.ALL_EXTERNAL_REFERENCED_TYPES,
+            createAnalysis(),
+            engine,
+            (level, message, args) -> blackhole.consume(message))));
+    }
+
+    private Analysis createAnalysis() {
+        return switch (analysis) {
+            case "TypeShouldExtendType" -> new TypeShouldExtendType("Lorg/gradle/api/DefaultTask");
+            case "TypeShouldNotOverrideGetter" -> new TypeShouldNotOverrideGetter();
+            case "TypeShouldNotOverrideSetter" -> new TypeShouldNotOverrideSetter();
+            case "ShouldNotReferenceInternalApi" -> new ShouldNotReferenceInternalApi();
+            case "FindTypeReferences" -> new FindTypeReferences("Lorg/gradle/api/Project");
+            default -> throw new IllegalArgumentException("Unknown analysis " + analysis);
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.TypeRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The jars the benchmarks analyze, passed in by the build: the Gradle API, Groovy and Kotlin as the runtime,
+ * and the test logger plugin with its dependencies as the classpath.
+ */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+    }
+
+    static List<Path> runtime() {
+        var paths = new ArrayList<Path>();
+        paths.add(Path.of(System.getProperty("gradle-api")));
+        paths.addAll(split(System.getProperty("local-groovy")));
+        paths.addAll(split(System.getProperty("local-kotlin")));
+        return paths;
+    }
+
+    static List<Path> classpath() {
+        return split(System.getProperty("plugin-files"));
+    }
+
+    static TypeRepository.Builder repositoryBuilder() {
+        return TypeRepository.builder()
+            .runtime(runtime())
+            .classpath(classpath());
+    }
+
+    static TypeRepository createRepository() throws IOException, ClassHierarchyException {
+        return repositoryBuilder().build();
+    }
+
+    private static List<Path> split(String paths) {
+        return Stream.of(paths.split(Pattern.quote(File.pathSeparator)))
+            .filter(path -> !path.isEmpty())
+            .map(Path::of)
+            .distinct()
+            .toList();
+    }
+}
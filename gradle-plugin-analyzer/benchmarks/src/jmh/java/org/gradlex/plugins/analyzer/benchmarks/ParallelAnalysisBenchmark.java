@@ -0,0 +1,59 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.Analyzer;
+import org.gradlex.plugins.analyzer.DefaultAnalyzer;
+import org.gradlex.plugins.analyzer.Reporter;
+import org.gradlex.plugins.analyzer.TypeRepository;
+import org.gradlex.plugins.analyzer.TypeRepository.TypeSet;
+import org.gradlex.plugins.analyzer.analysis.FindTypeReferences;
+import org.gradlex.plugins.analyzer.analysis.ShouldNotReferenceInternalApi;
+import org.gradlex.plugins.analyzer.analysis.TypeShouldExtendType;
+import org.gradlex.plugins.analyzer.analysis.TypeShouldNotOverrideGetter;
+import org.gradlex.plugins.analyzer.analysis.TypeShouldNotOverrideSetter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running all built-in analyses in a single pass over {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES} with multiple threads.
+ * Shows how well analyzing types scales, compare the timings with a parallelism of 1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelAnalysisBenchmark {
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    private DefaultAnalyzer analyzer;
+
+    @Setup
+    public void createAnalyzer() throws IOException, ClassHierarchyException {
+        TypeRepository repository = BenchmarkFixtures.createRepository();
+        repository.getTypeSet(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES);
+        analyzer = new DefaultAnalyzer(repository, parallelism, String::valueOf);
+    }
+
+    @Benchmark
+    public void analyze(Blackhole blackhole) {
+        Reporter reporter = (level, message, args) -> blackhole.consume(message);
+        analyzer.analyze(List.of(
+            new Analyzer.Binding(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES, new TypeShouldExtendType("Lorg/gradle/api/DefaultTask"), reporter),
+            new Analyzer.Binding(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES, new TypeShouldNotOverrideGetter(), reporter),
+            new Analyzer.Binding(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES, new TypeShouldNotOverrideSetter(), reporter),
+            new Analyzer.Binding(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES, new ShouldNotReferenceInternalApi(), reporter),
+            new Analyzer.Binding(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES, new FindTypeReferences("Lorg/gradle/api/Project"), reporter)
+        ));
+    }
+}
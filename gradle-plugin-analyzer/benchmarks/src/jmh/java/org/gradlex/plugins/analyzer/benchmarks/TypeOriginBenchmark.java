@@ -0,0 +1,43 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.TypeOrigin;
+import org.gradlex.plugins.analyzer.TypeTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Classifying a single class, cycling through all classes of the runtime and the classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypeOriginBenchmark {
+    private IClass[] classes;
+    private int next;
+
+    @Setup
+    public void loadClasses() throws IOException, ClassHierarchyException {
+        TypeTable typeTable = BenchmarkFixtures.createRepository().getTypeTable();
+        classes = IntStream.range(0, typeTable.size())
+            .mapToObj(typeTable::getClass)
+            .toArray(IClass[]::new);
+    }
+
+    @Benchmark
+    public TypeOrigin of() {
+        IClass type = classes[next];
+        next = (next + 1) % classes.length;
+        return TypeOrigin.of(type);
+    }
+}
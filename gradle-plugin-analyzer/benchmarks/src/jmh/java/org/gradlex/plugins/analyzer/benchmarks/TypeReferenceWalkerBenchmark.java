@@ -0,0 +1,62 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.ReferenceEngine;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker;
+import org.gradlex.plugins.analyzer.TypeRepository;
+import org.gradlex.plugins.analyzer.TypeResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.gradlex.plugins.analyzer.TypeReferenceWalker.VisitDecision.VISIT_AND_CONTINUE;
+
+/**
+ * Walking the references of a single type, cycling through the types of {@link TypeRepository.TypeSet#ALL_EXTERNAL_REFERENCED_TYPES}.
+ * <p>
+ * Without an instruction cache every walk decodes the method bodies again,
+ * with the default size of 1,000,000 instructions the bodies of the fixture stay decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TypeReferenceWalkerBenchmark {
+    @Param({"BYTECODE", "CONSTANT_POOL"})
+    public ReferenceEngine engine;
+
+    @Param({"0", "1000000"})
+    public long instructionCacheSize;
+
+    private TypeRepository repository;
+    private TypeResolver resolver;
+    private List<IClass> types;
+    private int next;
+
+    @Setup
+    public void createRepository() throws IOException, ClassHierarchyException {
+        repository = BenchmarkFixtures.repositoryBuilder()
+            .instructionCacheSize(instructionCacheSize)
+            .build();
+        resolver = repository.getTypeResolver();
+        types = repository.getTypeSet(TypeRepository.TypeSet.ALL_EXTERNAL_REFERENCED_TYPES);
+    }
+
+    @Benchmark
+    public void walkReferences(Blackhole blackhole) {
+        IClass type = types.get(next);
+        next = (next + 1) % types.size();
+        TypeReferenceWalker.walkInheritedReferences(type, resolver, superType -> VISIT_AND_CONTINUE, blackhole::consume);
+        repository.walkDeclaredReferences(type, resolver, engine, blackhole::consume);
+    }
+}
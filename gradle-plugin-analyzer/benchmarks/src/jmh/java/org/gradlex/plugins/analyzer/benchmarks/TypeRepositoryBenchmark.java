@@ -0,0 +1,32 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.TypeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the class hierarchy of the runtime and the classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TypeRepositoryBenchmark {
+    @Param({"false", "true"})
+    public boolean lazyHierarchy;
+
+    @Benchmark
+    public TypeRepository createRepository() throws IOException, ClassHierarchyException {
+        return BenchmarkFixtures.repositoryBuilder()
+            .lazyHierarchy(lazyHierarchy)
+            .build();
+    }
+}
@@ -0,0 +1,89 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.types.TypeReference;
+import org.gradlex.plugins.analyzer.Reference;
+import org.gradlex.plugins.analyzer.Reference.Source;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitor;
+import org.gradlex.plugins.analyzer.TypeReferenceWalker.ReferenceVisitorFactory;
+import org.gradlex.plugins.analyzer.TypeRepository;
+import org.gradlex.plugins.analyzer.TypeRepository.TypeSet;
+import org.gradlex.plugins.analyzer.TypeResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Resolving a single type name or method, cycling through the ones the walker resolves
+ * for the types of {@link TypeSet#ALL_EXTERNAL_REFERENCED_TYPES}.
+ * Names and methods are resolved once during setup, so this measures the resolver with warm caches, like during analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypeResolverBenchmark {
+    private TypeResolver resolver;
+    private String[] typeNames;
+    private String[][] methods;
+    private int nextTypeName;
+    private int nextMethod;
+
+    @Setup
+    public void collectLookups() throws IOException, ClassHierarchyException {
+        TypeRepository repository = BenchmarkFixtures.createRepository();
+        resolver = repository.getTypeResolver();
+        var visitedTypeNames = new ArrayList<String>();
+        var visitedMethods = new ArrayList<String[]>();
+        Consumer<Reference> ignored = reference -> {
+        };
+        var visitorFactory = new ReferenceVisitorFactory(resolver, ignored) {
+            @Override
+            protected ReferenceVisitor createVisitor(Source source) {
+                return new ReferenceVisitor(source, resolver, ignored) {
+                    @Override
+                    public void visitType(String typeName) {
+                        visitedTypeNames.add(typeName);
+                        super.visitType(typeName);
+                    }
+
+                    @Override
+                    public void visitMethod(String typeName, String methodSignature) {
+                        visitedMethods.add(new String[]{typeName, methodSignature});
+                        super.visitMethod(typeName, methodSignature);
+                    }
+                };
+            }
+        };
+        for (IClass type : repository.getTypeSet(TypeSet.ALL_EXTERNAL_REFERENCED_TYPES)) {
+            TypeReferenceWalker.walkDeclaredReferences(type, visitorFactory);
+        }
+        typeNames = visitedTypeNames.toArray(String[]::new);
+        methods = visitedMethods.toArray(String[][]::new);
+    }
+
+    @Benchmark
+    public TypeReference findReference() {
+        String typeName = typeNames[nextTypeName];
+        nextTypeName = (nextTypeName + 1) % typeNames.length;
+        return resolver.findReference(typeName);
+    }
+
+    @Benchmark
+    public IMethod resolveMethod() {
+        String[] method = methods[nextMethod];
+        nextMethod = (nextMethod + 1) % methods.length;
+        return resolver.resolveMethod(method[0], method[1]);
+    }
+}
@@ -0,0 +1,46 @@
+package org.gradlex.plugins.analyzer.benchmarks;
+
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import org.gradlex.plugins.analyzer.TypeRepository;
+import org.gradlex.plugins.analyzer.TypeRepository.TypeSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a type set into a fresh repository, as type sets are cached once loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TypeSetBenchmark {
+    @Param({"ALL_EXTERNAL_TYPES", "EXTERNAL_TASK_TYPES", "ALL_EXTERNAL_REFERENCED_TYPES"})
+    public TypeSet typeSet;
+
+    @Param({"1", "4"})
+    public int closureParallelism;
+
+    private TypeRepository repository;
+
+    @Setup(Level.Iteration)
+    public void createRepository() throws IOException, ClassHierarchyException {
+        repository = BenchmarkFixtures.repositoryBuilder()
+            .closureParallelism(closureParallelism)
+            .build();
+    }
+
+    @Benchmark
+    public BitSet loadTypeSet() {
+        return repository.getTypeSetIds(typeSet);
+    }
+}
@@ -1,5 +1,7 @@
-import com.google.common.collect.ImmutableSortedSet
-import com.google.common.collect.MultimapBuilder
+import com.google.common.base.Throwables
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
 import com.ibm.wala.classLoader.IClass
 import com.ibm.wala.classLoader.IField
 import com.ibm.wala.classLoader.IMethod
@@ -7,14 +9,26 @@ import com.ibm.wala.types.TypeName
 import com.ibm.wala.types.TypeReference
 import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.decodeFromStream
 import kotlinx.serialization.json.encodeToStream
+import org.gradle.api.logging.Logging
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+import org.gradle.api.services.ServiceReference
+import org.gradle.workers.WorkerExecutionException
 import org.gradle.internal.Actions
 import org.gradlex.plugins.analyzer.Analysis
 import org.gradlex.plugins.analyzer.Analyzer
+import org.gradlex.plugins.analyzer.AnalyzerEvents
+import org.gradlex.plugins.analyzer.ClasspathFootprint
 import org.gradlex.plugins.analyzer.DefaultAnalyzer
+import org.gradlex.plugins.analyzer.MessageSpool
+import org.gradlex.plugins.analyzer.PerformanceMetrics
+import org.gradlex.plugins.analyzer.ReferenceEngine
 import org.gradlex.plugins.analyzer.Reporter
+import org.gradlex.plugins.analyzer.RuntimeLayer
 import org.gradlex.plugins.analyzer.TypeRepository
 import org.gradlex.plugins.analyzer.TypeRepository.TypeSet
 import org.gradlex.plugins.analyzer.TypeRepository.TypeSet.ALL_EXTERNAL_REFERENCED_TYPES
@@ -30,12 +44,21 @@ import org.slf4j.event.Level
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.PrintWriter
+import java.io.Writer
+import java.lang.management.ManagementFactory
 import java.net.URI
 import java.net.http.HttpClient
 import java.net.http.HttpRequest
 import java.net.http.HttpResponse
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.Semaphore
+import kotlin.math.min
+import jdk.jfr.Configuration
+import jdk.jfr.Recording
 
 plugins {
     // Required since we are resolving JVM artifacts
@@ -60,55 +83,176 @@ abstract class AnalyzedPlugin(val pluginId: String) : Comparable<AnalyzedPlugin>
 abstract class AnalysisRunner : java.io.Serializable {
     abstract fun executeAnalysis(context: Context)
 
-    protected fun executeAnalysis(context: Context, title: String, set: TypeSet, analysis: Analysis) {
-        val builder = ImmutableSortedSet.naturalOrder<Message>()
-        context.analyzer.analyze(set, analysis) { level, message, args ->
-            if (level.toInt() >= context.level.toInt()) {
-                builder.add(Message(level.name, message.format(*args)))
+    /**
+     * The inputs of the runner that affect its results, so that results of a previous run are only reused for the same analyses.
+     */
+    abstract val identity: List<Any>
+
+    protected fun executeAnalysis(context: Context, title: String, set: TypeSet, analysis: Analysis, engine: ReferenceEngine = ReferenceEngine.BYTECODE) {
+        context.schedule(title, set, analysis, engine)
+    }
+
+    /**
+     * Collects the analyses of all runners, so that they can be executed in a single pass over the types.
+     * Messages are spooled to the [spoolDirectory] while the analyses run, see [MessageSpool].
+     */
+    class Context(val level: Level, private val spoolDirectory: File) : AutoCloseable {
+        private val scheduled = mutableListOf<ScheduledAnalysis>()
+
+        fun schedule(title: String, set: TypeSet, analysis: Analysis, engine: ReferenceEngine = ReferenceEngine.BYTECODE) {
+            scheduled += ScheduledAnalysis(title, set, analysis, engine, MessageSpool(spoolDirectory.toPath()))
+        }
+
+        fun execute(analyzer: Analyzer) {
+            analyzer.analyze(bindings())
+        }
+
+        /**
+         * Only analyzes the types that changed since the state was stored by the previous run.
+         */
+        fun executeIncrementally(analyzer: DefaultAnalyzer, stateFile: File, configurationKey: String) {
+            analyzer.analyzeIncrementally(bindings(), stateFile.toPath(), configurationKey)
+        }
+
+        private fun bindings() = scheduled.map { analysis ->
+            // Analyses skip the messages below the level, instead of finding and formatting them only to be dropped here
+            Analyzer.Binding(analysis.set, analysis.analysis, analysis.engine, Reporter.filtering(level) { level, message, args ->
+                analysis.messages.add(level, message.format(*args))
+            })
+        }
+
+        /**
+         * Writes the messages as a [PluginReport], one message at a time, and returns the number of messages written.
+         */
+        fun writeReport(writer: Writer): Int {
+            var count = 0
+            writer.write("{\"messageGroups\":[")
+            scheduled.filter { !it.messages.isEmpty }.forEachIndexed { index, analysis ->
+                if (index > 0) {
+                    writer.write(",")
+                }
+                writer.write("{\"title\":${Json.encodeToString(analysis.title)},\"messages\":[")
+                var first = true
+                analysis.messages.forEachSorted { level, message ->
+                    if (!first) {
+                        writer.write(",")
+                    }
+                    first = false
+                    writer.write(Json.encodeToString(Message(level.name, message)))
+                    count++
+                }
+                writer.write("]}")
             }
+            writer.write("]}")
+            return count
         }
-        val messages = builder.build()
-        if (!messages.isEmpty()) {
-            context.messageGroups.add(MessageGroup(title, messages.asList()))
+
+        override fun close() {
+            scheduled.forEach { it.messages.close() }
         }
-    }
 
-    data class Context(val analyzer: Analyzer, val level: Level, val messageGroups: MutableList<MessageGroup>)
+        private class ScheduledAnalysis(val title: String, val set: TypeSet, val analysis: Analysis, val engine: ReferenceEngine, val messages: MessageSpool)
+    }
 }
 
 class TypeShouldExtendTypeRunner(@Input val title: String, @Input val set: TypeSet, @Input val extendedSuperType: String) : AnalysisRunner() {
+    override val identity get() = listOf(title, set, extendedSuperType)
+
     override fun executeAnalysis(context: Context) {
         executeAnalysis(context, title, set, TypeShouldExtendType(extendedSuperType))
     }
 }
 
 class TypeShouldNotOverrideGetterRunner(@Input val set: TypeSet) : AnalysisRunner() {
+    override val identity get() = listOf(set)
+
     override fun executeAnalysis(context: Context) {
         executeAnalysis(context, "Should not override getter", set, TypeShouldNotOverrideGetter())
     }
 }
 
 class TypeShouldNotOverrideSetterRunner(@Input val set: TypeSet) : AnalysisRunner() {
+    override val identity get() = listOf(set)
+
     override fun executeAnalysis(context: Context) {
         executeAnalysis(context, "Should not override setter", set, TypeShouldNotOverrideSetter())
     }
 }
 
-class ShouldNotReferenceInternalApiRunner(@Input val set: TypeSet) : AnalysisRunner() {
+/**
+ * Use [ReferenceEngine.CONSTANT_POOL] as the [engine] to quickly triage a large batch of plugins.
+ */
+class ShouldNotReferenceInternalApiRunner(@Input val set: TypeSet, @Input val engine: ReferenceEngine = ReferenceEngine.BYTECODE) : AnalysisRunner() {
+    override val identity get() = listOf(set, engine)
+
     override fun executeAnalysis(context: Context) {
-        executeAnalysis(context, "Should not reference internal Gradle API", set, ShouldNotReferenceInternalApi())
+        executeAnalysis(context, "Should not reference internal Gradle API", set, ShouldNotReferenceInternalApi(), engine)
     }
 }
 
-class FindTypeReferencesRunner(@Input val set: TypeSet, @Input val typeName: String) : AnalysisRunner() {
+class FindTypeReferencesRunner(@Input val set: TypeSet, @Input val typeName: String, @Input val engine: ReferenceEngine = ReferenceEngine.BYTECODE) : AnalysisRunner() {
+    override val identity get() = listOf(set, typeName, engine)
+
     override fun executeAnalysis(context: Context) {
-        executeAnalysis(context, "References ${typeName}", set, FindTypeReferences(typeName))
+        executeAnalysis(context, "References ${typeName}", set, FindTypeReferences(typeName), engine)
     }
 }
 
-open class PluginAnalyzerExtension(objects: ObjectFactory) {
+open class PluginAnalyzerExtension(objects: ObjectFactory, providers: ProviderFactory) {
     val runners = objects.domainObjectSet(AnalysisRunner::class.java)
 
+    /**
+     * The number of threads each worker uses to analyze the types of a plugin.
+     */
+    val parallelism = objects.property(Int::class.java).convention(1)
+
+    /**
+     * The number of threads each worker uses to discover the types referenced by a plugin, the same as [parallelism] by default.
+     */
+    val closureParallelism = objects.property(Int::class.java).convention(parallelism)
+
+    /**
+     * Start analyzing the referenced types of a plugin while they are still being discovered.
+     */
+    val streaming = objects.property(Boolean::class.java).convention(false)
+
+    /**
+     * Only load the Gradle runtime classes reachable from the plugin's classes, which makes workers start quicker and use less heap.
+     * The supertypes of the runtime classes are kept in a snapshot, so later runs find the reachable classes without reading the runtime.
+     * Without a lazy hierarchy, each worker loads the whole runtime and no snapshot is kept.
+     */
+    val lazyHierarchy = objects.property(Boolean::class.java).convention(false)
+
+    /**
+     * Record the analysis of each plugin with Java Flight Recorder, into a `.jfr` file next to the plugin's report.
+     */
+    val flightRecording = objects.property(Boolean::class.java).convention(false)
+
+    /**
+     * The largest heap of a worker in megabytes. The heap of each worker is estimated from the classes it analyzes,
+     * and doubled up to this size once if the worker runs out of memory.
+     */
+    val maximumWorkerHeapMegabytes = objects.property(Int::class.java).convention(4096)
+
+    /**
+     * The total heap in megabytes of the workers analyzing plugins at the same time, half of the physical memory by default.
+     * Falls back to a single worker of the [maximumWorkerHeapMegabytes] where the physical memory is not known.
+     */
+    val workerMemoryBudgetMegabytes = objects.property(Int::class.java).convention(
+        providers.provider { halfOfPhysicalMemoryMegabytes() }.orElse(maximumWorkerHeapMegabytes)
+    )
+
+    // Only read when the budget is needed, and not every JVM provides the physical memory
+    private fun halfOfPhysicalMemoryMegabytes(): Int? {
+        val bean = ManagementFactory.getOperatingSystemMXBean() as? com.sun.management.OperatingSystemMXBean ?: return null
+        return (bean.totalMemorySize / 2 / (1024 * 1024)).toInt().takeIf { it > 0 }
+    }
+
+    /**
+     * Only re-analyze the classes of a plugin that changed since the previous run, e.g. when a new version is released.
+     */
+    val incremental = objects.property(Boolean::class.java).convention(false)
+
     fun analyze(runner: AnalysisRunner) {
         runners.add(runner)
     }
@@ -128,8 +272,18 @@ data class Message(val level: String, val message: String) : Comparable<Message>
 @Serializable
 data class MessageGroup(val title: String, val messages: List<Message>)
 
+/**
+ * Phase timings in milliseconds and counters, see [PerformanceMetrics].
+ * Kept out of the [PluginReport], as they differ between any two runs.
+ */
 @Serializable
-data class PluginReport(val messageGroups: List<MessageGroup>)
+data class Performance(val phases: Map<String, Long>, val counters: Map<String, Long>)
+
+/**
+ * @param aliasOf the plugin whose report this one links to, because both resolve to the same classpath.
+ */
+@Serializable
+data class PluginReport(val messageGroups: List<MessageGroup>, val aliasOf: String? = null)
 
 @CacheableTask
 abstract class PluginAnalyzerTask : DefaultTask() {
@@ -142,17 +296,86 @@ abstract class PluginAnalyzerTask : DefaultTask() {
     @get:OutputFile
     abstract val reportFile: RegularFileProperty
 
+    /**
+     * Where to write the [Performance] of analyzing the plugin.
+     * Not an output, so that the timings do not end up in the build cache: nothing is written when the report
+     * is taken from the build cache, and the file is deleted when the report links to the report of another plugin.
+     */
+    @get:Internal
+    abstract val performanceFile: RegularFileProperty
+
+    /**
+     * Where to keep snapshots of the runtime, shared between the analysis of different plugins.
+     * Only used with a lazy hierarchy, to find the reachable runtime classes without reading them.
+     */
+    @get:Internal
+    abstract val runtimeSnapshotDirectory: DirectoryProperty
+
+    /**
+     * Where to keep the reference index of classpath jars, shared between the analysis of different plugins.
+     */
+    @get:Internal
+    abstract val referenceIndexDirectory: DirectoryProperty
+
     @get:Input
     abstract val level: Property<Level>
 
+    @get:Internal
+    abstract val parallelism: Property<Int>
+
+    @get:Internal
+    abstract val closureParallelism: Property<Int>
+
+    @get:Internal
+    abstract val streaming: Property<Boolean>
+
+    @get:Internal
+    abstract val lazyHierarchy: Property<Boolean>
+
+    /**
+     * Record the analysis with Java Flight Recorder into a `.jfr` file next to the report.
+     * Nothing is recorded when the report is taken from the build cache.
+     */
+    @get:Internal
+    abstract val flightRecording: Property<Boolean>
+
+    /**
+     * Where to keep the per-type results of the previous run when analyzing incrementally.
+     * The results are the same as the ones of a full run.
+     */
+    @get:Internal
+    abstract val incrementalStateFile: RegularFileProperty
+
     // TODO This should be @Nested, but then we get "not serializable" errors...
     @get:Input
     abstract val runners: ListProperty<AnalysisRunner>
 
+    /**
+     * Another plugin with the same classpath, whose report this task links to instead of analyzing the classpath again.
+     */
+    @get:Input
+    @get:Optional
+    abstract val aliasOf: Property<String>
+
     init {
         level.convention(Level.INFO)
+        parallelism.convention(1)
+        closureParallelism.convention(parallelism)
+        streaming.convention(false)
+        lazyHierarchy.convention(false)
+        flightRecording.convention(false)
+        maximumWorkerHeapMegabytes.convention(4096)
     }
 
+    /**
+     * The largest heap of a worker, the heap is estimated from the classes on the runtime and the classpath up to this size.
+     */
+    @get:Internal
+    abstract val maximumWorkerHeapMegabytes: Property<Int>
+
+    @get:ServiceReference(WorkerMemoryBudget.NAME)
+    abstract val memoryBudget: Property<WorkerMemoryBudget>
+
     @get:Inject
     abstract val workerExecutor: WorkerExecutor
 
@@ -164,17 +387,71 @@ abstract class PluginAnalyzerTask : DefaultTask() {
 
             val reportFile: RegularFileProperty
 
+            val performanceFile: RegularFileProperty
+
+            val runtimeSnapshotDirectory: DirectoryProperty
+
+            val referenceIndexDirectory: DirectoryProperty
+
             val level: Property<Level>
 
+            val parallelism: Property<Int>
+
+            val closureParallelism: Property<Int>
+
+            val streaming: Property<Boolean>
+
+            val lazyHierarchy: Property<Boolean>
+
+            val flightRecording: Property<Boolean>
+
+            val spoolDirectory: DirectoryProperty
+
+            val incrementalStateFile: RegularFileProperty
+
             val runners: ListProperty<AnalysisRunner>
         }
 
-        @OptIn(ExperimentalSerializationApi::class)
         override fun execute() {
-            val files = parameters.runtime.files.map(File::toPath) +
-                parameters.classpath.files.map(File::toPath)
-            val messageGroups = mutableListOf<MessageGroup>()
-            val analyzer = DefaultAnalyzer(TypeRepository(files)) { arg ->
+            val report = parameters.reportFile.get().asFile
+            if (!parameters.flightRecording.get()) {
+                analyze(report)
+                return
+            }
+            Recording(Configuration.getConfiguration("default")).use { recording ->
+                recording.destination = File(report.parentFile, "${report.nameWithoutExtension}.jfr").toPath()
+                // Keep the recording when the worker runs out of memory and dies
+                recording.dumpOnExit = true
+                recording.start()
+                try {
+                    analyze(report)
+                } finally {
+                    recording.stop()
+                }
+            }
+        }
+
+        private fun analyze(report: File) {
+            val start = System.nanoTime()
+            PerformanceMetrics.resetPeakHeap()
+            // Worker daemons are reused between plugins, so keep the runtime around for the next plugin
+            val runtimeLayer = RuntimeLayer.shared(
+                parameters.runtime.files.map(File::toPath),
+                parameters.runtimeSnapshotDirectory.orNull?.asFile?.toPath()
+            )
+            // Unmaps the plugin's jars once analyzed, the runtime layer keeps its own for the next plugin
+            TypeRepository.builder()
+                .runtimeLayer(runtimeLayer)
+                .classpath(parameters.classpath.files.map(File::toPath))
+                .referenceIndexDirectory(parameters.referenceIndexDirectory.orNull?.asFile?.toPath())
+                .closureParallelism(parameters.closureParallelism.get())
+                .lazyHierarchy(parameters.lazyHierarchy.get())
+                .build()
+                .use { typeRepository -> analyze(report, typeRepository, start) }
+        }
+
+        private fun analyze(report: File, typeRepository: TypeRepository, start: Long) {
+            val analyzer = DefaultAnalyzer(typeRepository, parameters.parallelism.get(), parameters.streaming.get()) { arg ->
                 when (arg) {
                     is IClass -> formatType(arg.name)
                     is TypeReference -> formatType(arg.name)
@@ -185,14 +462,46 @@ abstract class PluginAnalyzerTask : DefaultTask() {
                 }
             }
 
-            parameters.runners.get().forEach { runner ->
-                runner.executeAnalysis(AnalysisRunner.Context(analyzer, parameters.level.get(), messageGroups))
+            AnalysisRunner.Context(parameters.level.get(), parameters.spoolDirectory.get().asFile).use { context ->
+                parameters.runners.get().forEach { runner ->
+                    runner.executeAnalysis(context)
+                }
+                val stateFile = parameters.incrementalStateFile.orNull?.asFile
+                if (stateFile != null) {
+                    context.executeIncrementally(analyzer, stateFile, configurationKey(parameters.runners.get(), parameters.level.get()))
+                } else {
+                    context.execute(analyzer)
+                }
+                val metrics = typeRepository.performanceMetrics
+                metrics.recordPhase(TOTAL_PHASE, start)
+                metrics.recordPeakHeap()
+                Logging.getLogger(Work::class.java).info("{}, {}, {}", typeRepository.typeResolver, typeRepository.instructionCache, metrics)
+
+                val reportWriting = AnalyzerEvents.ReportWriting()
+                reportWriting.begin()
+                reportWriting.messages = report.bufferedWriter().use { writer ->
+                    context.writeReport(writer)
+                }
+                reportWriting.report = report.name
+                reportWriting.size = report.length()
+                reportWriting.commit()
+                // Gradle only creates the directories of declared outputs
+                val performanceFile = parameters.performanceFile.get().asFile
+                performanceFile.parentFile.mkdirs()
+                performanceFile.writeText(Json.encodeToString(Performance(metrics.phaseMillis, metrics.counters)))
             }
+        }
 
-            val report = parameters.reportFile.get().asFile
-            FileOutputStream(report).use { stream ->
-                Json.encodeToStream(PluginReport(messageGroups), stream)
+        /**
+         * Identifies the configured analyses by the class and [AnalysisRunner.identity] of each runner,
+         * so that results of a previous run are only reused for the same ones.
+         * Includes the level, as messages below it are not stored.
+         */
+        private fun configurationKey(runners: List<AnalysisRunner>, level: Level): String {
+            val key = runners.joinToString("\n", postfix = "\n${level.name}") { runner ->
+                "${runner.javaClass.name}${runner.identity}"
             }
+            return Hashing.sha256().hashString(key, Charsets.UTF_8).toString()
         }
 
         private fun formatType(type: TypeName) = "type `${toFQCN(type.toString())}`"
@@ -209,51 +518,196 @@ abstract class PluginAnalyzerTask : DefaultTask() {
         }
     }
 
+    @OptIn(ExperimentalSerializationApi::class)
     @TaskAction
     fun execute() {
+        // Timings of a previous run do not belong to this report
+        performanceFile.get().asFile.delete()
+        if (aliasOf.isPresent) {
+            FileOutputStream(reportFile.get().asFile).use { stream ->
+                Json.encodeToStream(PluginReport(listOf(), aliasOf = aliasOf.get()), stream)
+            }
+            return
+        }
+
+        val maximumHeap = maximumWorkerHeapMegabytes.get().toLong()
+        val heap = ClasspathFootprint.estimateHeapMegabytes(
+            ClasspathFootprint.of(runtime.files.map(File::toPath)),
+            ClasspathFootprint.of(classpath.files.map(File::toPath)),
+            lazyHierarchy.get(),
+            maximumHeap
+        )
+        try {
+            analyzeInWorker(heap)
+        } catch (e: WorkerExecutionException) {
+            if (heap >= maximumHeap || !Throwables.getCausalChain(e).any { isOutOfMemoryError(it) }) {
+                throw e
+            }
+            val retryHeap = min(heap * 2, maximumHeap)
+            logger.warn("{} ran out of memory with a heap of {} MB, retrying with {} MB", path, heap, retryHeap)
+            analyzeInWorker(retryHeap)
+        }
+    }
+
+    private fun analyzeInWorker(heapMegabytes: Long) {
+        memoryBudget.get().withReservation(heapMegabytes) {
+            submitWork(heapMegabytes)
+            workerExecutor.await()
+        }
+    }
+
+    // Errors that cannot be deserialized in the daemon are sent back as a placeholder,
+    // whose string starts with the class name of the original error like the original's
+    private fun isOutOfMemoryError(throwable: Throwable) =
+        throwable is OutOfMemoryError || throwable.toString().startsWith(OutOfMemoryError::class.java.name)
+
+    private fun submitWork(heapMegabytes: Long) {
         val task = this
         workerExecutor.processIsolation {
             forkOptions {
-                // Seems to help analyze Kotlin plugins quite a bit
-                maxHeapSize = "1g"
+                maxHeapSize = "${heapMegabytes}m"
             }
         }
             .submit(Work::class) {
                 classpath = task.classpath
                 runtime = task.runtime
                 reportFile = task.reportFile
+                performanceFile = task.performanceFile
+                runtimeSnapshotDirectory = task.runtimeSnapshotDirectory
+                referenceIndexDirectory = task.referenceIndexDirectory
                 level = task.level
+                parallelism = task.parallelism
+                closureParallelism = task.closureParallelism
+                streaming = task.streaming
+                lazyHierarchy = task.lazyHierarchy
+                flightRecording = task.flightRecording
+                spoolDirectory.set(task.temporaryDir)
+                incrementalStateFile = task.incrementalStateFile
                 runners = task.runners
             }
+    }
+}
+
+/**
+ * Limits the heap of the workers analyzing plugins at the same time to a total budget.
+ * Each task reserves the estimated heap of its worker, in units of [UNIT_MEGABYTES], before starting the worker.
+ * The estimate is only known once the task runs, so the task waits for its reservation in its action.
+ * To keep few tasks waiting there, Gradle only starts as many tasks as workers of the smallest heap fit into the budget,
+ * see [maxParallelUsages][org.gradle.api.services.BuildServiceSpec.getMaxParallelUsages].
+ */
+abstract class WorkerMemoryBudget : BuildService<WorkerMemoryBudget.Params> {
+    interface Params : BuildServiceParameters {
+        val totalMegabytes: Property<Int>
+    }
 
-        workerExecutor.await()
+    private val totalUnits = (parameters.totalMegabytes.get() / UNIT_MEGABYTES).coerceAtLeast(1)
+    private val available = Semaphore(totalUnits, true)
+
+    fun withReservation(megabytes: Long, action: () -> Unit) {
+        // A worker larger than the whole budget runs on its own
+        val units = min((megabytes + UNIT_MEGABYTES - 1) / UNIT_MEGABYTES, totalUnits.toLong()).toInt()
+        available.acquire(units)
+        try {
+            action()
+        } finally {
+            available.release(units)
+        }
+    }
+
+    companion object {
+        const val NAME = "pluginAnalyzerWorkerMemory"
+        const val UNIT_MEGABYTES = 128
+
+        fun maxParallelUsages(budgetMegabytes: Int, maximumWorkerHeapMegabytes: Int) =
+            (budgetMegabytes / min(ClasspathFootprint.SMALLEST_HEAP_MEGABYTES, maximumWorkerHeapMegabytes.toLong()).coerceAtLeast(1)).toInt().coerceAtLeast(1)
     }
 }
 
+/**
+ * Identifies the contents of a plugin's classpath, so that plugins resolving to the same classpath are only analyzed once.
+ */
+@CacheableTask
+abstract class PluginClasspathFingerprintTask : DefaultTask() {
+    @get:Classpath
+    abstract val classpath: ConfigurableFileCollection
+
+    @get:OutputFile
+    abstract val fingerprintFile: RegularFileProperty
+
+    @TaskAction
+    fun execute() {
+        val hasher = Hashing.sha256().newHasher()
+        // By content in classpath order, the same artifacts can be resolved to different locations
+        classpath.files.forEach { file ->
+            if (file.isFile) {
+                hasher.putBytes(hashContent(file))
+            } else if (file.isDirectory) {
+                // Class directories, e.g. of included builds, by the relative paths and contents of their files
+                file.walk().filter { it.isFile }.sortedBy { it.relativeTo(file).invariantSeparatorsPath }.forEach { entry ->
+                    hasher.putString(entry.relativeTo(file).invariantSeparatorsPath, Charsets.UTF_8).putByte(0)
+                    hasher.putBytes(hashContent(entry))
+                }
+            }
+        }
+        fingerprintFile.get().asFile.writeText(hasher.hash().toString())
+    }
+
+    private fun hashContent(file: File) = Files.asByteSource(file).hash(Hashing.sha256()).asBytes()
+}
+
 @CacheableTask
 abstract class PluginAnalysisCollectorTask : DefaultTask() {
     @get:InputFiles
     @get:PathSensitive(PathSensitivity.NONE)
     abstract val inputReports: ConfigurableFileCollection
 
+    /**
+     * The [Performance] of the analyzed plugins, named after the plugin IDs. Missing for reports taken from the build cache.
+     */
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.NAME_ONLY)
+    abstract val performanceFiles: ConfigurableFileCollection
+
     @get:OutputFile
     abstract val aggregateReportFile: RegularFileProperty
 
-    @OptIn(ExperimentalSerializationApi::class)
     @TaskAction
     fun execute() {
-        val allPluginReports = MultimapBuilder
-            .linkedHashKeys()
-            .treeSetValues()
-            .build<PluginReport, String>()
-
-        // Merge plugin reports with the same contents
-        inputReports.forEach { inputFile ->
-            val pluginReport = FileInputStream(inputFile).use { stream ->
-                Json.decodeFromStream<PluginReport>(stream)
+        val inputFiles = inputReports.files.toList()
+        val distinctReports = ConcurrentHashMap<HashCode, DistinctReport>()
+        val digestByPlugin = ConcurrentHashMap<String, HashCode>()
+        val aliases = ConcurrentSkipListMap<String, String>()
+        val unresolvedAliases = sortedMapOf<String, String>()
+        val performanceByPlugin = ConcurrentSkipListMap<String, Performance>()
+
+        // Merge plugin reports with the same messages.
+        // Only the first file of each distinct report is kept, and decoded again when the report is written.
+        inputFiles.indices.toList().parallelStream().forEach { index ->
+            val inputFile = inputFiles[index]
+            val pluginReport = readReport(inputFile)
+            val pluginId = inputFile.nameWithoutExtension
+            if (pluginReport.aliasOf != null) {
+                aliases[pluginId] = pluginReport.aliasOf
+                return@forEach
+            }
+            val digest = digest(pluginReport.messageGroups)
+            digestByPlugin[pluginId] = digest
+            distinctReports.compute(digest) { _, existing ->
+                (existing ?: DistinctReport()).also { it.add(index, inputFile, pluginId) }
+            }
+        }
+        performanceFiles.files.filter { it.isFile }.parallelStream().forEach { file ->
+            performanceByPlugin[file.name.removeSuffix(PERFORMANCE_FILE_SUFFIX)] = readPerformance(file)
+        }
+        aliases.forEach { (pluginId, aliasOf) ->
+            val digest = digestByPlugin[aliasOf]
+            if (digest != null) {
+                distinctReports.getValue(digest).pluginIds += pluginId
+            } else {
+                // The alias was analyzed on its own, e.g. by running its task directly, or the linked report is not an input
+                logger.warn("Plugin {} links to the report of {}, which was not analyzed", pluginId, aliasOf)
+                unresolvedAliases[pluginId] = aliasOf
             }
-            var pluginId = inputFile.nameWithoutExtension
-            allPluginReports.put(pluginReport, pluginId)
         }
 
         val report = aggregateReportFile.get().asFile
@@ -263,20 +717,31 @@ abstract class PluginAnalysisCollectorTask : DefaultTask() {
             writer.println("Produced at **${LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))}**")
             writer.println()
 
-            allPluginReports.asMap().forEach { pluginReport, pluginIds ->
-                writeReport(writer, pluginReport, pluginIds)
+            // In the order of the input files, no matter which thread read them first
+            distinctReports.values.sortedBy { it.firstIndex }.forEach { distinctReport ->
+                writeReport(writer, readReport(distinctReport.firstFile!!).messageGroups, distinctReport.pluginIds)
+            }
+            unresolvedAliases.forEach { (pluginId, aliasOf) ->
+                writer.println("## Plugin ${formatPluginId(pluginId)}")
+                writer.println()
+                writer.println("Has the same classpath as ${formatPluginId(aliasOf)}, which was not analyzed.")
+                writer.println()
+            }
+
+            if (performanceByPlugin.isNotEmpty()) {
+                writePerformance(writer, performanceByPlugin)
             }
         }
 
         println("Plugin analysis report: " + report.absolutePath)
     }
 
-    fun writeReport(writer: PrintWriter, pluginReport: PluginReport, pluginIds: Collection<String>) {
-        writer.println("## Plugin ${pluginIds.joinToString { formatPluginId(it) }} (${pluginReport.messageGroups.map { it.messages.size }.sum()})")
+    fun writeReport(writer: PrintWriter, messageGroups: List<MessageGroup>, pluginIds: Collection<String>) {
+        writer.println("## Plugin ${pluginIds.joinToString { formatPluginId(it) }} (${messageGroups.map { it.messages.size }.sum()})")
         writer.println()
 
-        if (pluginReport.messageGroups.isNotEmpty()) {
-            pluginReport.messageGroups.forEach { messageGroup ->
+        if (messageGroups.isNotEmpty()) {
+            messageGroups.forEach { messageGroup ->
                 writer.println("### ${messageGroup.title} (${messageGroup.messages.size})")
                 writer.println()
                 messageGroup.messages.forEach { message ->
@@ -296,6 +761,78 @@ abstract class PluginAnalysisCollectorTask : DefaultTask() {
         writer.println()
     }
 
+    fun writePerformance(writer: PrintWriter, performanceByPlugin: Map<String, Performance>) {
+        writer.println("## Performance")
+        writer.println()
+        writer.println("Times are in milliseconds, summed up over the threads working on a phase.")
+        writer.println()
+        writer.println("| Plugin | Total | Hierarchy | Type sets | Analyses | Classes | Referenced types | References walked | Instructions decoded | Peak heap (MB) |")
+        writer.println("|---|--:|--:|--:|--:|--:|--:|--:|--:|--:|")
+        performanceByPlugin.forEach { (pluginId, performance) ->
+            val phases = performance.phases
+            val counters = performance.counters
+            val cells = listOf(
+                phases[TOTAL_PHASE],
+                phases[PerformanceMetrics.HIERARCHY],
+                sumWithPrefix(phases, PerformanceMetrics.TYPE_SET_PREFIX),
+                sumWithPrefix(phases, PerformanceMetrics.ANALYSIS_PREFIX),
+                counters[PerformanceMetrics.CLASSES_IN_SCOPE],
+                counters[PerformanceMetrics.TYPES_IN_SET_PREFIX + ALL_EXTERNAL_REFERENCED_TYPES.name],
+                counters[PerformanceMetrics.REFERENCES_WALKED],
+                counters[PerformanceMetrics.INSTRUCTIONS_DECODED],
+                counters[PerformanceMetrics.PEAK_HEAP_BYTES]?.let { it / (1024 * 1024) },
+            )
+            writer.println("| ${formatPluginId(pluginId)} | ${cells.joinToString(" | ") { it?.toString() ?: "-" }} |")
+        }
+        writer.println()
+    }
+
+    private fun sumWithPrefix(values: Map<String, Long>, prefix: String) =
+        values.filterKeys { it.startsWith(prefix) }.values.takeIf { it.isNotEmpty() }?.sum()
+
+    @OptIn(ExperimentalSerializationApi::class)
+    private fun readReport(file: File) = FileInputStream(file).use { stream ->
+        Json.decodeFromStream<PluginReport>(stream)
+    }
+
+    @OptIn(ExperimentalSerializationApi::class)
+    private fun readPerformance(file: File) = FileInputStream(file).use { stream ->
+        Json.decodeFromStream<Performance>(stream)
+    }
+
+    /**
+     * Identifies the messages of a report, two reports with the same digest are merged.
+     */
+    private fun digest(messageGroups: List<MessageGroup>): HashCode {
+        val hasher = Hashing.sha256().newHasher()
+        messageGroups.forEach { messageGroup ->
+            hasher.putInt(messageGroup.messages.size)
+            hasher.putString(messageGroup.title, Charsets.UTF_8).putByte(0)
+            messageGroup.messages.forEach { message ->
+                hasher.putString(message.level, Charsets.UTF_8).putByte(0)
+                hasher.putString(message.message, Charsets.UTF_8).putByte(0)
+            }
+        }
+        return hasher.hash()
+    }
+
+    /**
+     * The plugins with the same messages, and the first of their report files in the order of the input files.
+     */
+    private class DistinctReport {
+        val pluginIds = sortedSetOf<String>()
+        var firstIndex = Int.MAX_VALUE
+        var firstFile: File? = null
+
+        fun add(index: Int, file: File, pluginId: String) {
+            pluginIds += pluginId
+            if (index < firstIndex) {
+                firstIndex = index
+                firstFile = file
+            }
+        }
+    }
+
     private fun formatPluginId(pluginId: String) = "[`${pluginId}`](https://plugins.gradle.org/plugin/${pluginId})"
 }
 
@@ -304,6 +841,13 @@ open class PluginInfo(val artifact: String, val sourceUrl: String?) : Comparable
 }
 
 companion object Util {
+    /**
+     * The time of the whole analysis of a plugin, from loading the classes to the end of the analyses.
+     */
+    const val TOTAL_PHASE = "total"
+
+    const val PERFORMANCE_FILE_SUFFIX = ".performance.json"
+
     fun lookupPlugin(pluginId: String): PluginInfo {
         val client = HttpClient.newHttpClient()
 
@@ -350,6 +894,27 @@ val analyzePluginsTask = tasks.register<PluginAnalysisCollectorTask>("analyzePlu
 
 val pluginAnalyzer = extensions.create<PluginAnalyzerExtension>("pluginAnalyzer")
 
+// By plugin ID, to find the plugins a plugin can link to
+val fingerprintTasks = sortedMapOf<String, TaskProvider<PluginClasspathFingerprintTask>>()
+
+gradle.sharedServices.registerIfAbsent(WorkerMemoryBudget.NAME, WorkerMemoryBudget::class.java) {
+    parameters.totalMegabytes = pluginAnalyzer.workerMemoryBudgetMegabytes
+    maxParallelUsages = pluginAnalyzer.workerMemoryBudgetMegabytes.zip(pluginAnalyzer.maximumWorkerHeapMegabytes) { budget, maximumHeap ->
+        WorkerMemoryBudget.maxParallelUsages(budget, maximumHeap)
+    }
+}
+
+/**
+ * The first of the plugins with the same classpath fingerprint analyzes the classpath, the others link to its report.
+ * Only needs the fingerprints of the plugin and of the plugins before it.
+ */
+fun findAliasOf(pluginId: String, fingerprintFiles: Set<FileSystemLocation>): String? {
+    val fingerprints = fingerprintFiles.associate { it.asFile.nameWithoutExtension to it.asFile.readText() }
+    val fingerprint = fingerprints.getValue(pluginId)
+    val canonicalPluginId = fingerprints.filterValues { it == fingerprint }.keys.min()
+    return canonicalPluginId.takeIf { it != pluginId }
+}
+
 pluginAnalyzer.analyzedPlugins.all {
     val simplifiedName = pluginId.replace(':', '_').replace('.', '_')
 
@@ -361,15 +926,39 @@ pluginAnalyzer.analyzedPlugins.all {
         coordinates.orElse(defaultCoordinates).map { dependencyFactory.create(it) }
     )
 
+    val fingerprintTask = tasks.register<PluginClasspathFingerprintTask>("fingerprint_$simplifiedName") {
+        classpath = config
+        fingerprintFile = project.layout.buildDirectory.file("plugin-analysis/fingerprints/${pluginId}.txt")
+    }
+    fingerprintTasks[pluginId] = fingerprintTask
+    // Evaluated lazily, so that plugins registered later are included
+    val candidateFingerprints = files(Callable {
+        fingerprintTasks.filterKeys { it <= pluginId }.values.map { task -> task.flatMap { it.fingerprintFile } }
+    })
+
     val analyzeTask = tasks.register<PluginAnalyzerTask>("analyze_$simplifiedName") {
         classpath = config
+        aliasOf = candidateFingerprints.elements.map { findAliasOf(pluginId, it) }
         runtime.from(gradleRuntime)
         runners = pluginAnalyzer.runners
+        parallelism = pluginAnalyzer.parallelism
+        closureParallelism = pluginAnalyzer.closureParallelism
+        streaming = pluginAnalyzer.streaming
+        lazyHierarchy = pluginAnalyzer.lazyHierarchy
+        flightRecording = pluginAnalyzer.flightRecording
+        maximumWorkerHeapMegabytes = pluginAnalyzer.maximumWorkerHeapMegabytes
         reportFile = project.layout.buildDirectory.file("plugin-analysis/plugins/${pluginId}.json")
+        performanceFile = project.layout.buildDirectory.file("plugin-analysis/performance/${pluginId}${PERFORMANCE_FILE_SUFFIX}")
+        runtimeSnapshotDirectory = project.layout.buildDirectory.dir("plugin-analysis/runtime-snapshots")
+            .filter { pluginAnalyzer.lazyHierarchy.get() }
+        referenceIndexDirectory = project.layout.buildDirectory.dir("plugin-analysis/reference-index")
+        incrementalStateFile = project.layout.buildDirectory.file("plugin-analysis/incremental/${pluginId}.state")
+            .filter { pluginAnalyzer.incremental.get() }
     }
 
     analyzePluginsTask.configure {
         inputReports.from(analyzeTask.flatMap { it.reportFile })
+        performanceFiles.from(analyzeTask.flatMap { it.performanceFile })
     }
 }
 